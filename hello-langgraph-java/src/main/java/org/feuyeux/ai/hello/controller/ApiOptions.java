@@ -0,0 +1,42 @@
+package org.feuyeux.ai.hello.controller;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Value;
+
+/** Limits of the HTTP API, read from the environment or {@code .env}. */
+@Value
+@Builder
+public class ApiOptions {
+  /** Graph runs executing at once; further requests wait in the queue. */
+  @Builder.Default int maxConcurrency = 8;
+
+  /** Requests allowed to wait for a free slot; beyond that they get 429 Too Many Requests. */
+  @Builder.Default int maxQueued = 64;
+
+  /** Deadline of a request that does not ask for one, including time spent queued. */
+  @Builder.Default Duration defaultDeadline = Duration.ofSeconds(120);
+
+  /** Upper bound on the deadline a request may ask for. */
+  @Builder.Default Duration maxDeadline = Duration.ofSeconds(600);
+
+  public static ApiOptions fromEnv() {
+    return ApiOptions.builder()
+        .maxConcurrency(intValueOf("API_MAX_CONCURRENCY", 8))
+        .maxQueued(intValueOf("API_MAX_QUEUED", 64))
+        .defaultDeadline(Duration.ofSeconds(intValueOf("API_DEADLINE_SECONDS", 120)))
+        .maxDeadline(Duration.ofSeconds(intValueOf("API_MAX_DEADLINE_SECONDS", 600)))
+        .build();
+  }
+
+  /** The requested deadline in seconds, defaulted and capped. */
+  public Duration deadline(Integer requestedSeconds) {
+    if (requestedSeconds == null || requestedSeconds <= 0) {
+      return defaultDeadline;
+    }
+    Duration requested = Duration.ofSeconds(requestedSeconds);
+    return requested.compareTo(maxDeadline) > 0 ? maxDeadline : requested;
+  }
+}
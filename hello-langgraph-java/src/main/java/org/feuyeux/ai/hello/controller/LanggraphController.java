@@ -0,0 +1,222 @@
+package org.feuyeux.ai.hello.controller;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.fun.EmbeddingRouterEdgeFn;
+import org.feuyeux.ai.hello.service.BatchOptions;
+import org.feuyeux.ai.hello.service.BatchRunner;
+import org.feuyeux.ai.hello.service.LanggraphService;
+import org.feuyeux.ai.hello.util.BoundedExecutor;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * HTTP API of {@link LanggraphService}. Every graph run goes through one {@link BoundedExecutor}:
+ * runs execute on virtual threads, at most {@code API_MAX_CONCURRENCY} at once, with up to {@code
+ * API_MAX_QUEUED} requests waiting (429 beyond that) and a per-request deadline (504 when missed).
+ * The deadline is bound to the run as a {@link Deadline}, so model calls still in flight when it
+ * passes, or when a streaming client goes away, are cancelled too.
+ *
+ * <p>{@code GET /generate/stream} sends server-sent events: a {@code node} event as every node
+ * finishes, {@code token} events while the answer is generated and a final {@code done} event
+ * with the answer. A generation rejected by the graders is followed by the tokens of the next
+ * attempt.
+ */
+@Slf4j
+@RestController
+public class LanggraphController {
+  @Autowired private LanggraphService langgraphService;
+
+  private final ApiOptions options = ApiOptions.fromEnv();
+  private final BoundedExecutor graphRuns =
+      new BoundedExecutor(options.getMaxConcurrency(), options.getMaxQueued());
+  private final ExecutorService streams = Executors.newVirtualThreadPerTaskExecutor();
+
+  public record GenerateRequest(String question, Integer deadlineSeconds) {}
+
+  public record BatchRequest(List<String> questions, Integer deadlineSeconds) {}
+
+  public record Answer(String question, String generation, String error) {}
+
+  public record RouterStats(
+      long decisions,
+      long fallbacks,
+      double fallbackRate,
+      EmbeddingRouterEdgeFn.Evaluation evaluation) {}
+
+  @PostMapping("/generate")
+  public Answer generate(@RequestBody GenerateRequest request) throws Exception {
+    Duration deadline = options.deadline(request.deadlineSeconds());
+    String question = request.question();
+    return new Answer(question, call(() -> langgraphService.generate(question), deadline), null);
+  }
+
+  /**
+   * Answers all questions concurrently, each admitted like a single request; a question that is
+   * rejected, times out or fails gets an error instead of a generation.
+   */
+  @PostMapping("/generate/batch")
+  public List<Answer> generateBatch(@RequestBody BatchRequest request)
+      throws InterruptedException {
+    Duration deadline = options.deadline(request.deadlineSeconds());
+    List<Future<String>> runs = new ArrayList<>(request.questions().size());
+    for (String question : request.questions()) {
+      runs.add(streams.submit(() -> call(() -> langgraphService.generate(question), deadline)));
+    }
+    List<Answer> answers = new ArrayList<>(runs.size());
+    for (int i = 0; i < runs.size(); i++) {
+      String question = request.questions().get(i);
+      try {
+        answers.add(new Answer(question, runs.get(i).get(), null));
+      } catch (ExecutionException e) {
+        answers.add(new Answer(question, null, String.valueOf(e.getCause())));
+      }
+    }
+    return answers;
+  }
+
+  /**
+   * Answers questions posted one per line, plain or as JSON objects, and streams the answers back
+   * as JSONL while they complete; see {@link BatchRunner}. Meant for offline jobs, so it is not
+   * subject to the limits of single requests.
+   */
+  @PostMapping(path = "/batch", produces = "application/x-ndjson")
+  public StreamingResponseBody batch(Reader questions) {
+    BatchRunner runner = langgraphService.batchRunner(BatchOptions.fromEnv());
+    return body -> {
+      Writer answers = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+      try {
+        runner.run(new BufferedReader(questions), answers);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Batch interrupted", e);
+      }
+      answers.flush();
+    };
+  }
+
+  @GetMapping(path = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter stream(
+      @RequestParam String question, @RequestParam(required = false) Integer deadlineSeconds) {
+    Duration timeout = options.deadline(deadlineSeconds);
+    Deadline deadline = Deadline.after(timeout);
+    SseEmitter emitter = new SseEmitter(timeout.toMillis());
+    Future<?> run =
+        streams.submit(
+            () -> {
+              try {
+                String generation =
+                    graphRuns.call(
+                        () ->
+                            deadline.run(
+                                () ->
+                                    langgraphService.stream(
+                                        question,
+                                        token -> send(emitter, "token", Map.of("text", token)),
+                                        node -> send(emitter, "node", Map.of("node", node)))),
+                        timeout);
+                send(emitter, "done", Map.of("text", generation));
+                emitter.complete();
+              } catch (Exception e) {
+                log.warn("Streaming '{}' failed: {}", question, e.toString());
+                emitter.completeWithError(e);
+              }
+            });
+    // Stop the run and its model calls when the client goes away or the stream times out.
+    emitter.onTimeout(
+        () -> {
+          deadline.cancel();
+          run.cancel(true);
+        });
+    emitter.onError(
+        e -> {
+          deadline.cancel();
+          run.cancel(true);
+        });
+    return emitter;
+  }
+
+  /**
+   * Decisions and LLM fallbacks of the embedding router, with its evaluation when {@code
+   * ROUTER_EVALUATION} is set; 404 when routing by LLM only.
+   */
+  @GetMapping("/router/stats")
+  public ResponseEntity<RouterStats> routerStats() {
+    return ResponseEntity.of(
+        langgraphService
+            .getRouterStats()
+            .map(
+                stats ->
+                    new RouterStats(
+                        stats.getDecisions(),
+                        stats.getFallbacks(),
+                        stats.fallbackRate(),
+                        langgraphService.getRouterEvaluation().orElse(null))));
+  }
+
+  @ExceptionHandler(RejectedExecutionException.class)
+  @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+  public Map<String, String> rejected(RejectedExecutionException e) {
+    return Map.of("error", e.getMessage());
+  }
+
+  @ExceptionHandler({TimeoutException.class, Deadline.ExceededException.class})
+  @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+  public Map<String, String> timedOut(Exception e) {
+    return Map.of("error", e.getMessage());
+  }
+
+  @PreDestroy
+  public void close() {
+    streams.shutdownNow();
+  }
+
+  /** Runs {@code task} in {@link #graphRuns} under a {@link Deadline} of {@code timeout}. */
+  private <T> T call(Callable<T> task, Duration timeout) throws Exception {
+    Deadline deadline = Deadline.after(timeout);
+    try {
+      return graphRuns.call(() -> deadline.run(task), timeout);
+    } catch (TimeoutException e) {
+      deadline.cancel();
+      throw e;
+    }
+  }
+
+  private static void send(SseEmitter emitter, String event, Map<String, String> data) {
+    try {
+      emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
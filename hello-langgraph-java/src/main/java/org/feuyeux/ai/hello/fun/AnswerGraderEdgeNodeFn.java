@@ -1,16 +1,14 @@
 package org.feuyeux.ai.hello.fun;
 
-import static org.feuyeux.ai.hello.repository.ChatModelBuilder.buildChatModel;
-
-import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.input.Prompt;
 import dev.langchain4j.model.input.structured.StructuredPrompt;
 import dev.langchain4j.model.input.structured.StructuredPromptProcessor;
 import dev.langchain4j.model.output.structured.Description;
-import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
 import java.util.function.Function;
 import lombok.Value;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
 
 @Value(staticConstructor = "of")
 public class AnswerGraderEdgeNodeFn
@@ -35,13 +33,13 @@ public class AnswerGraderEdgeNodeFn
     Score invoke(String userMessage);
   }
 
+  ModelRegistry modelRegistry;
   String apiKey;
 
   @Override
   public Score apply(Arguments args) {
-    ChatModel chatLanguageModel = buildChatModel(apiKey);
-    Service service = AiServices.create(Service.class, chatLanguageModel);
     Prompt prompt = StructuredPromptProcessor.toPrompt(args);
-    return service.invoke(prompt.text());
+    return modelRegistry.call(
+        Service.class, apiKey, ModelRole.ANSWER_GRADER, service -> service.invoke(prompt.text()));
   }
 }
@@ -0,0 +1,261 @@
+package org.feuyeux.ai.hello.fun;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import dev.langchain4j.data.embedding.Embedding;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.Deadline;
+
+/**
+ * Routes a question by comparing its embedding to one centroid per datasource: the vectorstore
+ * centroid is built from the indexed corpus and labelled vectorstore questions, the web search
+ * centroid from labelled web questions. When the two cosine similarities differ by less than
+ * {@code margin}, the question is routed by the LLM router instead. The corpus centroid can be
+ * replaced with {@link #setCorpusCentroid} when ingestion changes the corpus.
+ */
+@Slf4j
+public class EmbeddingRouterEdgeFn implements Function<String, QuestionRouterEdgeFn.Type> {
+  /** Labelled questions used when no example file is configured. */
+  public static final Map<String, QuestionRouterEdgeFn.Type> DEFAULT_EXAMPLES = defaultExamples();
+
+  private final Function<String, Embedding> embedder;
+  private final Function<String, QuestionRouterEdgeFn.Type> fallback;
+  private final double margin;
+  // Sum of the unit vectors of the vectorstore examples, null without any.
+  private final float[] vectorstoreExamples;
+  private final int vectorstoreCount;
+  private volatile float[] vectorstoreCentroid;
+  private final float[] webSearchCentroid;
+  private final AtomicLong decisions = new AtomicLong();
+  private final AtomicLong fallbacks = new AtomicLong();
+
+  /** A route, and whether the LLM router had to decide it. */
+  @Value(staticConstructor = "of")
+  public static class Decision {
+    QuestionRouterEdgeFn.Type route;
+    boolean byLlm;
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Stats {
+    long decisions;
+    long fallbacks;
+
+    public double fallbackRate() {
+      return decisions == 0 ? 0 : (double) fallbacks / decisions;
+    }
+  }
+
+  /**
+   * Agreement on a labelled set: {@code agreement} is the share of confident local decisions that
+   * match the LLM router, {@code accuracy} the share of final routes that match the labels.
+   */
+  @Value(staticConstructor = "of")
+  public static class Evaluation {
+    int questions;
+    int confident;
+    double agreement;
+    double accuracy;
+
+    public double fallbackRate() {
+      return questions == 0 ? 0 : (double) (questions - confident) / questions;
+    }
+  }
+
+  /**
+   * @param corpusCentroid mean direction of the indexed segments, or {@code null} when unknown
+   */
+  public EmbeddingRouterEdgeFn(
+      Function<String, Embedding> embedder,
+      Function<String, QuestionRouterEdgeFn.Type> fallback,
+      Map<String, QuestionRouterEdgeFn.Type> examples,
+      float[] corpusCentroid,
+      double margin) {
+    this.embedder = embedder;
+    this.fallback = fallback;
+    this.margin = margin;
+    float[][] sums = new float[2][];
+    int[] counts = new int[2];
+    for (Map.Entry<String, QuestionRouterEdgeFn.Type> example : examples.entrySet()) {
+      float[] vector = unit(embedder.apply(example.getKey()).vector());
+      int label = example.getValue().ordinal();
+      if (sums[label] == null) {
+        sums[label] = new float[vector.length];
+      }
+      add(sums[label], vector, 1);
+      counts[label]++;
+    }
+    int vectorstore = QuestionRouterEdgeFn.Type.vectorstore.ordinal();
+    this.vectorstoreExamples = sums[vectorstore];
+    this.vectorstoreCount = counts[vectorstore];
+    setCorpusCentroid(corpusCentroid);
+    int webSearch = QuestionRouterEdgeFn.Type.web_search.ordinal();
+    this.webSearchCentroid = sums[webSearch] == null ? null : unit(sums[webSearch]);
+    if (vectorstoreCentroid == null || webSearchCentroid == null) {
+      log.warn("Embedding router lacks examples for a datasource; every question goes to the LLM");
+    }
+  }
+
+  /**
+   * Rebuilds the vectorstore centroid around {@code corpusCentroid}, or around the examples alone
+   * when it is {@code null}.
+   */
+  public void setCorpusCentroid(float[] corpusCentroid) {
+    float[] sum = vectorstoreExamples == null ? null : vectorstoreExamples.clone();
+    if (corpusCentroid != null) {
+      // The corpus weighs as much as all vectorstore examples together.
+      if (sum == null) {
+        sum = new float[corpusCentroid.length];
+      }
+      add(sum, unit(corpusCentroid), Math.max(1, vectorstoreCount));
+    }
+    vectorstoreCentroid = sum == null ? null : unit(sum);
+  }
+
+  /** Labelled questions from {@code route<TAB>question} lines; other lines are ignored. */
+  public static Map<String, QuestionRouterEdgeFn.Type> loadExamples(Path path) throws IOException {
+    Map<String, QuestionRouterEdgeFn.Type> examples = new LinkedHashMap<>();
+    for (String line : Files.readAllLines(path, UTF_8)) {
+      String[] fields = line.split("\t", 2);
+      if (fields.length == 2 && !fields[1].isBlank()) {
+        try {
+          examples.put(fields[1].strip(), QuestionRouterEdgeFn.Type.valueOf(fields[0].strip()));
+        } catch (IllegalArgumentException e) {
+          log.warn("Ignoring example with unknown route '{}'", fields[0]);
+        }
+      }
+    }
+    return examples;
+  }
+
+  @Override
+  public QuestionRouterEdgeFn.Type apply(String question) {
+    return decide(question).getRoute();
+  }
+
+  /** Routes {@code question} locally when confident, otherwise by the LLM router. */
+  public Decision decide(String question) {
+    decisions.incrementAndGet();
+    Optional<QuestionRouterEdgeFn.Type> confident = classify(question);
+    if (confident.isPresent()) {
+      log.debug("---ROUTED BY EMBEDDING: {}---", confident.get());
+      return Decision.of(confident.get(), false);
+    }
+    fallbacks.incrementAndGet();
+    return Decision.of(fallback.apply(question), true);
+  }
+
+  /** The route when the centroid margin is confident, empty when the LLM should decide. */
+  public Optional<QuestionRouterEdgeFn.Type> classify(String question) {
+    float[] vectorstoreCentroid = this.vectorstoreCentroid;
+    if (vectorstoreCentroid == null || webSearchCentroid == null) {
+      return Optional.empty();
+    }
+    float[] query = unit(Deadline.call(() -> embedder.apply(question)).vector());
+    double difference = dot(query, vectorstoreCentroid) - dot(query, webSearchCentroid);
+    if (Math.abs(difference) < margin) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        difference > 0
+            ? QuestionRouterEdgeFn.Type.vectorstore
+            : QuestionRouterEdgeFn.Type.web_search);
+  }
+
+  public Stats stats() {
+    return Stats.of(decisions.get(), fallbacks.get());
+  }
+
+  /**
+   * Routes every labelled question both locally and with the LLM router. Does not count towards
+   * {@link #stats()}.
+   */
+  public Evaluation evaluate(Map<String, QuestionRouterEdgeFn.Type> labelled) {
+    int confident = 0;
+    int agreed = 0;
+    int correct = 0;
+    for (Map.Entry<String, QuestionRouterEdgeFn.Type> example : labelled.entrySet()) {
+      Optional<QuestionRouterEdgeFn.Type> local = classify(example.getKey());
+      QuestionRouterEdgeFn.Type llm = fallback.apply(example.getKey());
+      if (local.isPresent()) {
+        confident++;
+        if (local.get() == llm) {
+          agreed++;
+        }
+      }
+      if (local.orElse(llm) == example.getValue()) {
+        correct++;
+      }
+    }
+    int questions = labelled.size();
+    return Evaluation.of(
+        questions,
+        confident,
+        confident == 0 ? 0 : (double) agreed / confident,
+        questions == 0 ? 0 : (double) correct / questions);
+  }
+
+  private static Map<String, QuestionRouterEdgeFn.Type> defaultExamples() {
+    Map<String, QuestionRouterEdgeFn.Type> examples = new LinkedHashMap<>();
+    for (String question :
+        new String[] {
+          "What are the types of agent memory?",
+          "How do LLM agents plan and decompose tasks?",
+          "How do agents use external tools?",
+          "What is chain-of-thought prompting?",
+          "What is few-shot prompting?",
+          "How should I design a prompt for an LLM?",
+          "What are adversarial attacks on large language models?",
+          "How does jailbreaking an LLM work?"
+        }) {
+      examples.put(question, QuestionRouterEdgeFn.Type.vectorstore);
+    }
+    for (String question :
+        new String[] {
+          "Who won the last football world cup?",
+          "What is the weather in Beijing today?",
+          "What is the current price of Bitcoin?",
+          "Who is the president of France?",
+          "When was the Eiffel Tower built?",
+          "What are the latest stock market news?",
+          "What movies are showing this weekend?",
+          "What is the population of Brazil?"
+        }) {
+      examples.put(question, QuestionRouterEdgeFn.Type.web_search);
+    }
+    return Collections.unmodifiableMap(examples);
+  }
+
+  private static void add(float[] sum, float[] vector, int weight) {
+    for (int i = 0; i < sum.length; i++) {
+      sum[i] += weight * vector[i];
+    }
+  }
+
+  private static double dot(float[] a, float[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  private static float[] unit(float[] vector) {
+    double norm = Math.sqrt(dot(vector, vector));
+    float[] unit = new float[vector.length];
+    for (int i = 0; i < vector.length && norm > 0; i++) {
+      unit[i] = (float) (vector[i] / norm);
+    }
+    return unit;
+  }
+}
@@ -0,0 +1,62 @@
+package org.feuyeux.ai.hello.fun;
+
+import dev.langchain4j.model.input.Prompt;
+import dev.langchain4j.model.input.structured.StructuredPrompt;
+import dev.langchain4j.model.input.structured.StructuredPromptProcessor;
+import dev.langchain4j.model.output.structured.Description;
+import dev.langchain4j.service.SystemMessage;
+import java.util.List;
+import java.util.function.Function;
+import lombok.Value;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
+
+/**
+ * Grades a generation for grounding and usefulness in one call, replacing {@link
+ * HallucinationGraderEdgeFn} followed by {@link AnswerGraderEdgeNodeFn}.
+ */
+@Value(staticConstructor = "of")
+public class GenerationGraderFn
+    implements Function<GenerationGraderFn.Arguments, GenerationGraderFn.Score> {
+
+  /** Binary scores for grounding in the facts and for addressing the question. */
+  public static class Score {
+    @Description("Answer is grounded in the facts, 'yes' or 'no'")
+    public String grounded;
+
+    @Description("Answer addresses the question, 'yes' or 'no'")
+    public String addressesQuestion;
+  }
+
+  @StructuredPrompt(
+      "Set of facts: \n\n {{documents}} \n\n User question: {{question}} \n\n"
+          + " LLM generation: {{generation}}")
+  @Value(staticConstructor = "of")
+  public static class Arguments {
+    List<String> documents;
+    String question;
+    String generation;
+  }
+
+  interface Service {
+    @SystemMessage(
+        "You are a grader assessing an LLM generation against a set of retrieved facts and a user question. \n"
+            + "Give two binary scores 'yes' or 'no'. \n"
+            + "grounded: 'yes' means that the answer is grounded in / supported by the set of facts. \n"
+            + "addressesQuestion: 'yes' means that the answer resolves the question.")
+    Score invoke(String userMessage);
+  }
+
+  ModelRegistry modelRegistry;
+  String apiKey;
+
+  @Override
+  public Score apply(Arguments args) {
+    Prompt prompt = StructuredPromptProcessor.toPrompt(args);
+    return modelRegistry.call(
+        Service.class,
+        apiKey,
+        ModelRole.HALLUCINATION_GRADER,
+        grader -> grader.invoke(prompt.text()));
+  }
+}
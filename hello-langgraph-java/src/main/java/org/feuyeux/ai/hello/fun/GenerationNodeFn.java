@@ -1,33 +1,161 @@
 package org.feuyeux.ai.hello.fun;
 
-import static org.feuyeux.ai.hello.repository.ChatModelBuilder.buildChatModel;
-
-import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.service.AiServices;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import dev.langchain4j.model.input.PromptTemplate;
 import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.service.V;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import lombok.Value;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.feuyeux.ai.hello.util.EndpointBalancer;
 
 @Value(staticConstructor = "of")
 public class GenerationNodeFn implements BiFunction<String, List<String>, String> {
+  private static final String PROMPT =
+      "You are an assistant for question-answering tasks. Use the following pieces of retrieved context to answer the question. If you don't know the answer, just say that you don't know. Use three sentences maximum and keep the answer concise.\n"
+          + "Question: {{question}} \n"
+          + "Context: {{context}} \n"
+          + "Answer:";
 
   public interface Service {
 
-    @UserMessage(
-        "You are an assistant for question-answering tasks. Use the following pieces of retrieved context to answer the question. If you don't know the answer, just say that you don't know. Use three sentences maximum and keep the answer concise.\n"
-            + "Question: {{question}} \n"
-            + "Context: {{context}} \n"
-            + "Answer:")
+    @UserMessage(PROMPT)
     String invoke(@V("question") String question, @V("context") List<String> context);
   }
 
+  ModelRegistry modelRegistry;
   String apiKey;
 
   public String apply(String question, List<String> context) {
-    ChatModel chatLanguageModel = buildChatModel(apiKey);
-    Service service = AiServices.create(Service.class, chatLanguageModel);
-    return service.invoke(question, context); // service
+    return modelRegistry.call(
+        Service.class, apiKey, ModelRole.GENERATOR, service -> service.invoke(question, context));
+  }
+
+  /**
+   * Same prompt as {@link #apply}, answered by the streaming chat model: every token is passed to
+   * {@code onToken} as it arrives. Blocks until the answer is complete and returns it. When the
+   * request's {@link Deadline} stops the wait, the HTTP stream is cancelled and later tokens are
+   * dropped; the Ollama server's slot is released once the stream has stopped.
+   */
+  public String stream(String question, List<String> context, Consumer<String> onToken)
+      throws InterruptedException {
+    String prompt =
+        PromptTemplate.from(PROMPT).apply(Map.of("question", question, "context", context)).text();
+    EndpointBalancer.Lease lease = modelRegistry.balancer(apiKey).lease();
+    AdaptiveLimiter.Permit permit;
+    try {
+      permit = modelRegistry.limiter(lease.getUrl()).acquire(ModelRole.GENERATOR.lane());
+    } catch (InterruptedException | RuntimeException | Error e) {
+      lease.release(e);
+      throw e;
+    }
+    Generation generation = new Generation(onToken, permit, lease);
+    try {
+      modelRegistry
+          .streamingChatModel(modelRegistry.chatModelKey(ModelRole.GENERATOR, lease.getUrl()))
+          .chat(prompt, generation);
+    } catch (RuntimeException | Error e) {
+      generation.release(e);
+      throw e;
+    }
+    try {
+      String answer = Deadline.await(generation.answer);
+      generation.release(null);
+      return answer;
+    } catch (ExecutionException e) {
+      generation.release(e.getCause());
+      throw new IllegalStateException("Streaming generation failed", e.getCause());
+    } catch (InterruptedException | RuntimeException | Error e) {
+      generation.abandon(e);
+      throw e;
+    }
+  }
+
+  /**
+   * One streamed answer. Its permit and lease are released exactly once: when the answer is done,
+   * or, once abandoned, when its stream has been cancelled or has ended. Before the first token
+   * there is no handle to cancel the stream with, so that happens on the first token instead.
+   */
+  private static final class Generation implements StreamingChatResponseHandler {
+    private final CompletableFuture<String> answer = new CompletableFuture<>();
+    private final Consumer<String> onToken;
+    private final AdaptiveLimiter.Permit permit;
+    private final EndpointBalancer.Lease lease;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private volatile StreamingHandle handle;
+    private volatile Throwable abandonedBy;
+
+    private Generation(
+        Consumer<String> onToken, AdaptiveLimiter.Permit permit, EndpointBalancer.Lease lease) {
+      this.onToken = onToken;
+      this.permit = permit;
+      this.lease = lease;
+    }
+
+    @Override
+    public void onPartialResponse(PartialResponse partial, PartialResponseContext context) {
+      handle = context.streamingHandle();
+      Throwable abandoned = abandonedBy;
+      if (abandoned != null) {
+        handle.cancel();
+        release(abandoned);
+        return;
+      }
+      onToken.accept(partial.text());
+    }
+
+    @Override
+    public void onCompleteResponse(ChatResponse response) {
+      answer.complete(response.aiMessage().text());
+      Throwable abandoned = abandonedBy;
+      if (abandoned != null) {
+        release(abandoned);
+      }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      answer.completeExceptionally(error);
+      if (abandonedBy != null) {
+        release(error);
+      }
+    }
+
+    /** Stops the stream if it has started sending tokens, otherwise at its first token. */
+    void abandon(Throwable cause) {
+      abandonedBy = cause;
+      StreamingHandle started = handle;
+      if (started != null) {
+        started.cancel();
+        release(cause);
+      }
+    }
+
+    /** Releases the permit and lease, after a failure unless {@code failure} is null. */
+    void release(Throwable failure) {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      if (failure == null) {
+        permit.release();
+        lease.release();
+      } else {
+        permit.release(failure);
+        lease.release(failure);
+      }
+    }
   }
 }
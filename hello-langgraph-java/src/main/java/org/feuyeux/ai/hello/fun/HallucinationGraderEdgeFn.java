@@ -1,17 +1,15 @@
 package org.feuyeux.ai.hello.fun;
 
-import static org.feuyeux.ai.hello.repository.ChatModelBuilder.buildChatModel;
-
-import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.input.Prompt;
 import dev.langchain4j.model.input.structured.StructuredPrompt;
 import dev.langchain4j.model.input.structured.StructuredPromptProcessor;
 import dev.langchain4j.model.output.structured.Description;
-import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
 import java.util.List;
 import java.util.function.Function;
 import lombok.Value;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
 
 @Value(staticConstructor = "of")
 public class HallucinationGraderEdgeFn
@@ -37,13 +35,16 @@ public class HallucinationGraderEdgeFn
     Score invoke(String userMessage);
   }
 
+  ModelRegistry modelRegistry;
   String apiKey;
 
   @Override
   public Score apply(Arguments args) {
-    ChatModel chatLanguageModel = buildChatModel(apiKey);
-    Service grader = AiServices.create(Service.class, chatLanguageModel);
     Prompt prompt = StructuredPromptProcessor.toPrompt(args);
-    return grader.invoke(prompt.text());
+    return modelRegistry.call(
+        Service.class,
+        apiKey,
+        ModelRole.HALLUCINATION_GRADER,
+        grader -> grader.invoke(prompt.text()));
   }
 }
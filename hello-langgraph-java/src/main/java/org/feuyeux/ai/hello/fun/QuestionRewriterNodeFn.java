@@ -1,19 +1,19 @@
 package org.feuyeux.ai.hello.fun;
 
 import static org.bsc.langgraph4j.utils.CollectionsUtils.mapOf;
-import static org.feuyeux.ai.hello.repository.ChatModelBuilder.buildChatModel;
 
-import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.input.Prompt;
 import dev.langchain4j.model.input.PromptTemplate;
-import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
 import java.util.function.Function;
 import lombok.Value;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
 
 @Value(staticConstructor = "of")
 public class QuestionRewriterNodeFn implements Function<String, String> {
 
+  ModelRegistry modelRegistry;
   String apiKey;
 
   interface LLMService {
@@ -25,12 +25,11 @@ public class QuestionRewriterNodeFn implements Function<String, String> {
 
   @Override
   public String apply(String question) {
-    ChatModel chatLanguageModel = buildChatModel(apiKey);
-    LLMService service = AiServices.create(LLMService.class, chatLanguageModel);
     PromptTemplate template =
         PromptTemplate.from(
             "Here is the initial question: \n\n {{question}} \n Formulate an improved question.");
     Prompt prompt = template.apply(mapOf("question", question));
-    return service.invoke(prompt.text());
+    return modelRegistry.call(
+        LLMService.class, apiKey, ModelRole.REWRITER, service -> service.invoke(prompt.text()));
   }
 }
@@ -1,34 +1,22 @@
 package org.feuyeux.ai.hello.fun;
 
-import static org.feuyeux.ai.hello.repository.ChatModelBuilder.buildChatModel;
-
-import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.output.structured.Description;
-import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
 import dev.langchain4j.service.UserMessage;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import org.feuyeux.ai.hello.graph.AdaptiveRagGraph;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
 
 @Slf4j
 /** Router for user queries to the most relevant datasource. */
 @Value(staticConstructor = "of")
 public class QuestionRouterEdgeFn implements Function<String, QuestionRouterEdgeFn.Type> {
 
-  private String routeQuestion(AdaptiveRagGraph.State state) {
-    log.debug("---ROUTE QUESTION---");
-    String question = state.question();
-    QuestionRouterEdgeFn.Type source = QuestionRouterEdgeFn.of(apiKey).apply(question);
-    if (source == QuestionRouterEdgeFn.Type.web_search) {
-      log.debug("---ROUTE QUESTION TO WEB SEARCH---");
-    } else {
-      log.debug("---ROUTE QUESTION TO RAG---");
-    }
-    return source.name();
-  }
-
   public enum Type {
     vectorstore,
     web_search
@@ -40,17 +28,28 @@ public class QuestionRouterEdgeFn implements Function<String, QuestionRouterEdge
     Type datasource;
   }
 
+  /** Routes for several questions decided in one call, in the order they were given. */
+  static class BatchResult {
+    @Description("One datasource per numbered question, in the order the questions are numbered")
+    List<Type> datasources;
+  }
+
+  static final String ROUTING_RULES =
+      """
+      You are an expert at routing a user question to a vectorstore or web search.
+      The vectorstore contains documents related to agents, prompt engineering, and adversarial attacks.
+
+      ROUTING RULES:
+      - If the question is about AI agents, agent memory, agent planning, agent tools, or agent systems -> use "vectorstore"
+      - If the question is about prompt engineering, prompting techniques, or prompt design -> use "vectorstore"
+      - If the question is about adversarial attacks on LLMs or AI security -> use "vectorstore"
+      - For all other questions (current events, general knowledge, specific facts) -> use "web_search"
+      """;
+
   interface Service {
     @SystemMessage(
-        """
-        You are an expert at routing a user question to a vectorstore or web search.
-        The vectorstore contains documents related to agents, prompt engineering, and adversarial attacks.
-
-        ROUTING RULES:
-        - If the question is about AI agents, agent memory, agent planning, agent tools, or agent systems -> use "vectorstore"
-        - If the question is about prompt engineering, prompting techniques, or prompt design -> use "vectorstore"
-        - If the question is about adversarial attacks on LLMs or AI security -> use "vectorstore"
-        - For all other questions (current events, general knowledge, specific facts) -> use "web_search"
+        ROUTING_RULES
+            + """
 
         Your task is to analyze the question and return a JSON object with the following structure:
         {
@@ -64,19 +63,69 @@ public class QuestionRouterEdgeFn implements Function<String, QuestionRouterEdge
     Result invoke(String question);
   }
 
+  interface BatchService {
+    // Kept free of per-request content so the server can reuse the processed prompt prefix.
+    @SystemMessage(
+        ROUTING_RULES
+            + """
+
+        You are given several numbered questions. Route each question on its own and return a JSON
+        object with exactly one datasource per question, in the same order as the numbering:
+        {
+          "datasources": ["vectorstore|web_search", ...]
+        }
+
+        IMPORTANT: Return ONLY a valid JSON object, without any additional text or explanations.
+        """)
+    BatchResult invoke(String userMessage);
+  }
+
+  ModelRegistry modelRegistry;
   String apiKey;
 
   @Override
   public Type apply(String question) {
-    ChatModel chatLanguageModel = buildChatModel(apiKey);
-    Service extractor = AiServices.create(Service.class, chatLanguageModel);
     try {
-      Result ds = extractor.invoke(question);
+      Result ds =
+          modelRegistry.call(
+              Service.class, apiKey, ModelRole.ROUTER, extractor -> extractor.invoke(question));
       return ds.datasource;
+    } catch (CancellationException | RejectedExecutionException e) {
+      throw e;
     } catch (Exception e) {
       log.error("Error routing question: {}", e.getMessage());
       // Default to vectorstore when JSON parsing fails
       return Type.vectorstore;
     }
   }
+
+  /**
+   * Routes all {@code questions} in a single LLM call.
+   *
+   * @return one route per question, in question order
+   * @throws IllegalStateException if the model does not return one route per question
+   */
+  public List<Type> applyBatch(List<String> questions) {
+    StringBuilder userMessage = new StringBuilder("Route these questions:\n");
+    for (int i = 0; i < questions.size(); i++) {
+      userMessage.append("Question [").append(i + 1).append("]: ").append(questions.get(i));
+      userMessage.append('\n');
+    }
+    BatchResult result =
+        modelRegistry.call(
+            BatchService.class,
+            apiKey,
+            ModelRole.ROUTER,
+            questions.size(),
+            service -> service.invoke(userMessage.toString()));
+    List<Type> routes = result == null ? null : result.datasources;
+    if (routes == null || routes.size() != questions.size() || routes.contains(null)) {
+      throw new IllegalStateException(
+          "expected "
+              + questions.size()
+              + " routes but got "
+              + (routes == null ? 0 : routes.size()));
+    }
+    return routes;
+  }
 }
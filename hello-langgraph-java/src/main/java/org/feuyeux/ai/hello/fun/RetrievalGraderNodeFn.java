@@ -1,20 +1,27 @@
 package org.feuyeux.ai.hello.fun;
 
-import static org.feuyeux.ai.hello.repository.ChatModelBuilder.buildChatModel;
-
-import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.input.Prompt;
 import dev.langchain4j.model.input.structured.StructuredPrompt;
 import dev.langchain4j.model.input.structured.StructuredPromptProcessor;
 import dev.langchain4j.model.output.structured.Description;
-import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
+import org.feuyeux.ai.hello.util.VirtualThreads;
 
+@Slf4j
 @Value(staticConstructor = "of")
 public class RetrievalGraderNodeFn
     implements Function<RetrievalGraderNodeFn.Arguments, RetrievalGraderNodeFn.Score> {
+  ModelRegistry modelRegistry;
   String apiKey;
 
   public static class Score {
@@ -29,20 +36,122 @@ public class RetrievalGraderNodeFn
     String document;
   }
 
+  /** Binary scores for several documents graded in one call, in the order they were given. */
+  public static class BatchScore {
+    @Description("One 'yes' or 'no' per retrieved document, in the order the documents are numbered")
+    public List<String> binaryScores;
+  }
+
+  @Value(staticConstructor = "of")
+  public static class BatchArguments {
+    String question;
+    List<String> documents;
+  }
+
+  static final String GRADER_INSTRUCTIONS =
+      "You are a grader assessing relevance of a retrieved document to a user question. \n"
+          + "    If the document contains keyword(s) or semantic meaning related to the user question, grade it as relevant. \n"
+          + "    It does not need to be a stringent test. The goal is to filter out erroneous retrievals. \n"
+          + "    Give a binary score 'yes' or 'no' score to indicate whether the document is relevant to the question.";
+
   interface Service {
-    @SystemMessage(
-        "You are a grader assessing relevance of a retrieved document to a user question. \n"
-            + "    If the document contains keyword(s) or semantic meaning related to the user question, grade it as relevant. \n"
-            + "    It does not need to be a stringent test. The goal is to filter out erroneous retrievals. \n"
-            + "    Give a binary score 'yes' or 'no' score to indicate whether the document is relevant to the question.")
+    @SystemMessage(GRADER_INSTRUCTIONS)
     Score invoke(String question);
   }
 
+  interface BatchService {
+    // Kept free of per-request content so the server can reuse the processed prompt prefix.
+    @SystemMessage(
+        GRADER_INSTRUCTIONS
+            + "\n    You are given several numbered documents. Grade each document on its own and"
+            + " return exactly one score per document, in the same order as the numbering.")
+    BatchScore invoke(String userMessage);
+  }
+
   @Override
   public Score apply(Arguments args) {
-    ChatModel chatLanguageModel = buildChatModel(apiKey);
-    Service service = AiServices.create(Service.class, chatLanguageModel);
     Prompt prompt = StructuredPromptProcessor.toPrompt(args);
-    return service.invoke(prompt.text());
+    return modelRegistry.call(
+        Service.class,
+        apiKey,
+        ModelRole.RETRIEVAL_GRADER,
+        service -> service.invoke(prompt.text()));
+  }
+
+  /**
+   * Grades all documents of {@code args} in a single LLM call.
+   *
+   * @return one score per document, in document order
+   * @throws IllegalStateException if the model does not return one score per document
+   */
+  public List<Score> applyBatch(BatchArguments args) {
+    StringBuilder userMessage = new StringBuilder();
+    List<String> documents = args.getDocuments();
+    for (int i = 0; i < documents.size(); i++) {
+      userMessage
+          .append("Retrieved document [")
+          .append(i + 1)
+          .append("]: \n\n ")
+          .append(documents.get(i))
+          .append(" \n\n");
+    }
+    userMessage.append(" User question: ").append(args.getQuestion());
+
+    BatchScore batchScore =
+        modelRegistry.call(
+            BatchService.class,
+            apiKey,
+            ModelRole.RETRIEVAL_GRADER,
+            documents.size(),
+            service -> service.invoke(userMessage.toString()));
+    List<String> binaryScores = batchScore == null ? null : batchScore.binaryScores;
+    if (binaryScores == null || binaryScores.size() != documents.size()) {
+      throw new IllegalStateException(
+          "expected "
+              + documents.size()
+              + " scores but got "
+              + (binaryScores == null ? 0 : binaryScores.size()));
+    }
+    return binaryScores.stream()
+        .map(
+            binaryScore -> {
+              Score score = new Score();
+              score.binaryScore = binaryScore;
+              return score;
+            })
+        .toList();
+  }
+
+  /**
+   * Grades {@code documents} in one {@link #applyBatch} call, or one by one when there is a single
+   * document or the batch call fails, e.g. with a wrong number of scores. Single calls run on up
+   * to {@code parallelism} virtual threads with {@code timeout} each. {@code onCall} is run for
+   * every LLM call.
+   *
+   * @return one score per document, in document order; empty when its call failed or timed out
+   */
+  public List<Optional<Score>> applyBatchOrEach(
+      String question, List<String> documents, int parallelism, Duration timeout, Runnable onCall) {
+    if (documents.size() > 1) {
+      try {
+        onCall.run();
+        return applyBatch(BatchArguments.of(question, documents)).stream()
+            .map(Optional::of)
+            .toList();
+      } catch (CancellationException | RejectedExecutionException e) {
+        // Cancelled, or the server is saturated: grading one by one would only add load.
+        throw e;
+      } catch (RuntimeException e) {
+        log.warn("Batch grading failed, grading documents one by one: {}", e.getMessage());
+      }
+    }
+    return VirtualThreads.mapOrdered(
+        documents,
+        document -> {
+          onCall.run();
+          return apply(Arguments.of(question, document));
+        },
+        parallelism,
+        timeout);
   }
 }
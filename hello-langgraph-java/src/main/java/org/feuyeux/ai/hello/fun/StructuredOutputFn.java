@@ -9,21 +9,24 @@ import dev.langchain4j.service.SystemMessage;
 import java.util.function.Function;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.feuyeux.ai.hello.util.EndpointBalancer;
 
 @Slf4j
 public class StructuredOutputFn implements Function<String, StructuredOutputFn.BizAction> {
   String apiKey;
   ChatModel chatLanguageModel;
+  Service service;
 
   public StructuredOutputFn(String apiKey) {
     this.apiKey = apiKey;
-    chatLanguageModel = buildChatModel(apiKey);
+    chatLanguageModel = buildChatModel(EndpointBalancer.parse(apiKey).get(0));
+    service = AiServices.create(Service.class, chatLanguageModel);
   }
 
   @Override
   public StructuredOutputFn.BizAction apply(String question) {
-    Service service = AiServices.create(Service.class, chatLanguageModel);
-    BizAction action = service.invoke(question);
+    BizAction action = Deadline.call(() -> service.invoke(question));
     log.info("question: {}, action: {}", question, action);
     return action;
   }
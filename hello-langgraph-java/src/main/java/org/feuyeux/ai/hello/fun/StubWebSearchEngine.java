@@ -0,0 +1,62 @@
+package org.feuyeux.ai.hello.fun;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline search engine returning canned results that echo the search terms, with an optional
+ * simulated latency. Used by tests and by {@code WEB_SEARCH_ENGINE=stub}.
+ */
+public class StubWebSearchEngine implements WebSearchEngine {
+  private final Duration latency;
+  private final AtomicInteger calls = new AtomicInteger();
+
+  public StubWebSearchEngine() {
+    this(Duration.ZERO);
+  }
+
+  public StubWebSearchEngine(Duration latency) {
+    this.latency = latency;
+  }
+
+  @Override
+  public WebSearchResults search(WebSearchRequest request) {
+    calls.incrementAndGet();
+    if (!latency.isZero()) {
+      try {
+        Thread.sleep(latency);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while searching", e);
+      }
+    }
+    String terms = request.searchTerms();
+    int max = request.maxResults() == null ? 3 : request.maxResults();
+    List<WebSearchOrganicResult> results = new ArrayList<>(max);
+    for (int i = 1; i <= max; i++) {
+      String q = URLEncoder.encode(terms, StandardCharsets.UTF_8);
+      results.add(
+          WebSearchOrganicResult.from(
+              "Result " + i + " for " + terms,
+              URI.create("https://stub.invalid/search?q=" + q + "&n=" + i),
+              "Stub snippet " + i + " about " + terms,
+              "Stub content " + i + " about " + terms));
+    }
+    return WebSearchResults.from(WebSearchInformationResult.from((long) max), results);
+  }
+
+  /** Number of searches that reached this engine. */
+  public int calls() {
+    return calls.get();
+  }
+}
@@ -1,24 +1,110 @@
 package org.feuyeux.ai.hello.fun;
 
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
 import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
 import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.web.search.WebSearchEngine;
 import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
-import lombok.Value;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.feuyeux.ai.hello.util.DotEnvConfig;
+import org.feuyeux.ai.hello.util.LruCache;
+import org.feuyeux.ai.hello.util.Queries;
+import org.feuyeux.ai.hello.util.SingleFlight;
 
-@Value(staticConstructor = "of")
+/**
+ * Web search through one shared engine. Results are cached by the normalized query for a TTL, and
+ * concurrent identical searches share a single outbound call.
+ */
+@Slf4j
 public class WebSearchNodeFn implements Function<String, List<Content>> {
-  String tavilyApiKey;
+  private final WebSearchEngine engine;
+  private final ContentRetriever retriever;
+  private final LruCache<String, List<Content>> cache;
+  private final SingleFlight<String, List<Content>> inFlight = new SingleFlight<>();
+
+  public WebSearchNodeFn(WebSearchEngine engine, int cacheSize, Duration ttl) {
+    this(engine, cacheSize, ttl, System::nanoTime);
+  }
+
+  public WebSearchNodeFn(
+      WebSearchEngine engine, int cacheSize, Duration ttl, LongSupplier nanoClock) {
+    this.engine = engine;
+    this.retriever =
+        WebSearchContentRetriever.builder().webSearchEngine(engine).maxResults(3).build();
+    this.cache = new LruCache<>(cacheSize, ttl, nanoClock);
+  }
+
+  /** Tavily, or the offline {@link StubWebSearchEngine} when {@code WEB_SEARCH_ENGINE=stub}. */
+  public static WebSearchNodeFn of(String tavilyApiKey) {
+    WebSearchEngine engine =
+        usesStubEngine()
+            ? new StubWebSearchEngine()
+            : TavilyWebSearchEngine.builder().apiKey(tavilyApiKey).build();
+    return of(engine);
+  }
+
+  public static WebSearchNodeFn of(WebSearchEngine engine) {
+    return new WebSearchNodeFn(
+        engine,
+        intValueOf("WEB_SEARCH_CACHE_SIZE", 256),
+        Duration.ofSeconds(intValueOf("WEB_SEARCH_CACHE_TTL_SECONDS", 600)));
+  }
+
+  public static boolean usesStubEngine() {
+    return DotEnvConfig.valueOf("WEB_SEARCH_ENGINE").filter("stub"::equalsIgnoreCase).isPresent();
+  }
 
   @Override
   public List<Content> apply(String query) {
-    WebSearchEngine webSearchEngine = TavilyWebSearchEngine.builder().apiKey(tavilyApiKey).build();
-    ContentRetriever webSearchContentRetriever =
-        WebSearchContentRetriever.builder().webSearchEngine(webSearchEngine).maxResults(3).build();
-    return webSearchContentRetriever.retrieve(new Query(query));
+    String key = Queries.normalize(query);
+    Optional<List<Content>> cached = cache.get(key);
+    if (cached.isPresent()) {
+      log.debug("Web search cache hit: '{}'", key);
+      return cached.get();
+    }
+    try {
+      // A follower waits no longer than its own request has left, whatever the leader's deadline.
+      Duration followerTimeout = Deadline.current().map(Deadline::remaining).orElse(null);
+      return inFlight.call(key, () -> search(key, query), followerTimeout);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (TimeoutException e) {
+      Deadline.current().ifPresent(Deadline::check);
+      throw new IllegalStateException("Web search timed out: " + query, e);
+    } catch (Exception e) {
+      throw new IllegalStateException("Web search failed: " + query, e);
+    }
+  }
+
+  public WebSearchEngine getEngine() {
+    return engine;
+  }
+
+  public LruCache.Stats getCacheStats() {
+    return cache.stats();
+  }
+
+  /** Searches that waited for an identical one in flight instead of calling the engine. */
+  public long getCoalescedSearches() {
+    return inFlight.followers();
+  }
+
+  private List<Content> search(String key, String query) {
+    List<Content> result = List.copyOf(Deadline.call(() -> retriever.retrieve(new Query(query))));
+    // An empty result is more likely a transient failure than a real answer, so it is retried.
+    if (!result.isEmpty()) {
+      cache.put(key, result);
+    }
+    return result;
   }
 }
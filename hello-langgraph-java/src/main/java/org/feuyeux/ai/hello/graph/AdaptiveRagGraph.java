@@ -11,29 +11,213 @@ import static org.bsc.langgraph4j.utils.CollectionsUtils.mapOf;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.bsc.langgraph4j.StateGraph;
 import org.bsc.langgraph4j.state.AgentState;
 import org.feuyeux.ai.hello.fun.*;
+import org.feuyeux.ai.hello.repository.ChatModelKey;
 import org.feuyeux.ai.hello.repository.HelloEmbeddingStore;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.feuyeux.ai.hello.util.LruCache;
+import org.feuyeux.ai.hello.util.VirtualThreads;
 
 @Slf4j(topic = "AdaptiveRag")
 public class AdaptiveRagGraph {
-
   private final String aiApiKey;
   private final String tavilyApiKey;
   private HelloEmbeddingStore helloEmbeddingStore;
+  private final ModelRegistry modelRegistry;
+  private final GraphOptions options;
+  private final RunBudget budget;
+
+  private final QuestionRouterEdgeFn questionRouter;
+  private final WebSearchNodeFn webSearcher;
+  private final RetrievalGraderNodeFn retrievalGrader;
+  private final GenerationNodeFn generator;
+  private final QuestionRewriterNodeFn questionRewriter;
+  private final HallucinationGraderEdgeFn hallucinationGrader;
+  private final AnswerGraderEdgeNodeFn answerGrader;
+  private final GenerationGraderFn generationGrader;
+  // Null unless GraphOptions.embeddingRouter is set.
+  private final EmbeddingRouterEdgeFn embeddingRouter;
+  private Map<String, QuestionRouterEdgeFn.Type> routerExamples;
+  // Corpus version the embedding router's corpus centroid was computed for.
+  private volatile long routerCorpusVersion;
+  private volatile EmbeddingRouterEdgeFn.Evaluation routerEvaluation;
+  // Runs whose route the embedding router decided without an LLM call.
+  private final Set<String> routedLocally = ConcurrentHashMap.newKeySet();
+  private final VerdictMemo verdicts;
+  private final ExecutorService graders = Executors.newVirtualThreadPerTaskExecutor();
+  private final ConcurrentMap<String, Consumer<String>> tokenListeners = new ConcurrentHashMap<>();
+  private final Speculator speculator = new Speculator();
+
+  public AdaptiveRagGraph(
+      String aiApiKey,
+      String tavilyApiKey,
+      HelloEmbeddingStore helloEmbeddingStore,
+      ModelRegistry modelRegistry) {
+    this(aiApiKey, tavilyApiKey, helloEmbeddingStore, modelRegistry, GraphOptions.fromEnv());
+  }
 
   public AdaptiveRagGraph(
-      String aiApiKey, String tavilyApiKey, HelloEmbeddingStore helloEmbeddingStore) {
+      String aiApiKey,
+      String tavilyApiKey,
+      HelloEmbeddingStore helloEmbeddingStore,
+      ModelRegistry modelRegistry,
+      GraphOptions options) {
     this.aiApiKey = aiApiKey;
     this.tavilyApiKey = tavilyApiKey;
     this.helloEmbeddingStore = helloEmbeddingStore;
+    this.modelRegistry = modelRegistry;
+    this.options = options;
+    this.budget = new RunBudget(options);
+    this.questionRouter = QuestionRouterEdgeFn.of(modelRegistry, aiApiKey);
+    this.webSearcher = WebSearchNodeFn.of(tavilyApiKey);
+    this.retrievalGrader = RetrievalGraderNodeFn.of(modelRegistry, aiApiKey);
+    this.generator = GenerationNodeFn.of(modelRegistry, aiApiKey);
+    this.questionRewriter = QuestionRewriterNodeFn.of(modelRegistry, aiApiKey);
+    this.hallucinationGrader = HallucinationGraderEdgeFn.of(modelRegistry, aiApiKey);
+    this.answerGrader = AnswerGraderEdgeNodeFn.of(modelRegistry, aiApiKey);
+    this.generationGrader = GenerationGraderFn.of(modelRegistry, aiApiKey);
+    this.embeddingRouter = options.isEmbeddingRouter() ? buildEmbeddingRouter() : null;
+    if (embeddingRouter != null && options.isRouterEvaluation()) {
+      Thread.ofVirtual().name("router-evaluation").start(this::evaluateRouter);
+    }
+    this.verdicts =
+        options.getVerdictMemoPath() == null
+            ? VerdictMemo.inMemory(options.getVerdictMemoSize())
+            : VerdictMemo.open(options.getVerdictMemoSize(), options.getVerdictMemoPath());
+  }
+
+  public LruCache.Stats getVerdictMemoStats() {
+    return verdicts.stats();
+  }
+
+  public Speculator.Stats getSpeculationStats() {
+    return speculator.stats();
+  }
+
+  /** The embedding router, for its stats and evaluation; empty when routing by LLM only. */
+  public Optional<EmbeddingRouterEdgeFn> getEmbeddingRouter() {
+    return Optional.ofNullable(embeddingRouter);
+  }
+
+  /** Agreement of the embedding router with the LLM router, once evaluated at startup. */
+  public Optional<EmbeddingRouterEdgeFn.Evaluation> getRouterEvaluation() {
+    return Optional.ofNullable(routerEvaluation);
+  }
+
+  private EmbeddingRouterEdgeFn buildEmbeddingRouter() {
+    try {
+      routerExamples =
+          options.getRouterExamplesPath() == null
+              ? EmbeddingRouterEdgeFn.DEFAULT_EXAMPLES
+              : EmbeddingRouterEdgeFn.loadExamples(options.getRouterExamplesPath());
+      routerCorpusVersion = helloEmbeddingStore.getCorpusVersion();
+      return new EmbeddingRouterEdgeFn(
+          helloEmbeddingStore::embedQuery,
+          questionRouter,
+          routerExamples,
+          corpusCentroid(),
+          options.getRouterMargin());
+    } catch (IOException | RuntimeException e) {
+      log.warn("Embedding router unavailable, routing by LLM only: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  /** Centroid of the corpus, estimated around the vectorstore examples where it must be. */
+  private float[] corpusCentroid() {
+    List<String> probes =
+        routerExamples.entrySet().stream()
+            .filter(e -> e.getValue() == QuestionRouterEdgeFn.Type.vectorstore)
+            .map(Map.Entry::getKey)
+            .toList();
+    return helloEmbeddingStore.getCorpusCentroid(probes).orElse(null);
+  }
+
+  /** Moves the embedding router's corpus centroid along when ingestion changed the corpus. */
+  private void refreshRouterCentroid() {
+    long version = helloEmbeddingStore.getCorpusVersion();
+    if (version == routerCorpusVersion) {
+      return;
+    }
+    synchronized (embeddingRouter) {
+      if (version == routerCorpusVersion) {
+        return;
+      }
+      try {
+        embeddingRouter.setCorpusCentroid(corpusCentroid());
+      } catch (RuntimeException e) {
+        log.warn("Keeping the previous corpus centroid: {}", e.getMessage());
+      }
+      routerCorpusVersion = version;
+    }
+  }
+
+  private void evaluateRouter() {
+    try {
+      routerEvaluation = embeddingRouter.evaluate(routerExamples);
+      log.info(
+          "Embedding router on {} examples: fallback rate {}, agreement {}, accuracy {}",
+          routerEvaluation.getQuestions(),
+          String.format("%.2f", routerEvaluation.fallbackRate()),
+          String.format("%.2f", routerEvaluation.getAgreement()),
+          String.format("%.2f", routerEvaluation.getAccuracy()));
+    } catch (RuntimeException e) {
+      log.warn("Evaluating the embedding router failed: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Streams the tokens of every generation in runs started with {@code stream_id} set to the
+   * returned id, until {@link #closeTokenStream} is called.
+   */
+  public String openTokenStream(Consumer<String> onToken) {
+    String streamId = UUID.randomUUID().toString();
+    tokenListeners.put(streamId, onToken);
+    return streamId;
+  }
+
+  public void closeTokenStream(String streamId) {
+    tokenListeners.remove(streamId);
+  }
+
+  /**
+   * Id for the {@code run_id} of a run, under which its speculative work is kept; pass it to {@link
+   * #closeRun} once the run finishes.
+   */
+  public String openRun() {
+    return UUID.randomUUID().toString();
+  }
+
+  /** Cancels speculative work of run {@code runId} that none of its nodes took. */
+  public void closeRun(String runId) {
+    speculator.finish(runId);
+    routedLocally.remove(runId);
   }
 
   public StateGraph<State> buildGraph() throws Exception {
@@ -50,21 +234,27 @@ public class AdaptiveRagGraph {
         .addNode("generate", node_async(this::generate))
         .addEdge("retrieve", "grade_documents")
         .addNode("grade_documents", node_async(this::gradeDocuments))
+        .addEdge("generate", "grade_generation")
+        .addNode("grade_generation", node_async(this::gradeGeneration))
         .addConditionalEdges(
-            "generate",
-            edge_async(this::gradeGeneration_v_documentsAndQuestion),
-            mapOf(
+            "grade_generation",
+            edge_async(this::decideOnGeneration),
+            Map.of(
                 "not supported", "generate",
                 "useful", END,
-                "not useful", "transform_query"))
+                "not useful", "transform_query",
+                "budget exhausted", "budget_exhausted"))
         .addNode("transform_query", node_async(this::transformQuery))
         .addConditionalEdges(
             "grade_documents",
             edge_async(this::decideToGenerate),
-            mapOf(
+            Map.of(
                 "transform_query", "transform_query",
-                "generate", "generate"))
-        .addEdge("transform_query", "retrieve");
+                "generate", "generate",
+                "budget exhausted", "budget_exhausted"))
+        .addEdge("transform_query", "retrieve")
+        .addNode("budget_exhausted", node_async(this::budgetExhausted))
+        .addEdge("budget_exhausted", END);
   }
 
   /**
@@ -76,7 +266,16 @@ public class AdaptiveRagGraph {
   private String routeQuestion(AdaptiveRagGraph.State state) {
     log.debug("---ROUTE QUESTION---");
     String question = state.question();
-    QuestionRouterEdgeFn.Type source = QuestionRouterEdgeFn.of(aiApiKey).apply(question);
+    // A batch run routes many questions in one call and passes the route in.
+    QuestionRouterEdgeFn.Type source =
+        state.route().map(QuestionRouterEdgeFn.Type::valueOf).orElse(null);
+    if (source == null) {
+      Optional<String> runId = state.runId();
+      source =
+          options.isSpeculativeRetrieval() && runId.isPresent()
+              ? routeSpeculatively(question, runId.get())
+              : route(question, runId);
+    }
     if (source == QuestionRouterEdgeFn.Type.web_search) {
       log.debug("---ROUTE QUESTION TO WEB SEARCH---");
     } else {
@@ -85,6 +284,47 @@ public class AdaptiveRagGraph {
     return source.name();
   }
 
+  private QuestionRouterEdgeFn.Type route(String question, Optional<String> runId) {
+    if (embeddingRouter == null) {
+      return questionRouter.apply(question);
+    }
+    refreshRouterCentroid();
+    EmbeddingRouterEdgeFn.Decision decision = embeddingRouter.decide(question);
+    if (!decision.isByLlm()) {
+      runId.ifPresent(routedLocally::add);
+    }
+    return decision.getRoute();
+  }
+
+  /**
+   * Routes {@code question} while its retrieval, and optionally its web search, already runs; the
+   * branch the router picks is kept for its node in run {@code runId} and the other one is
+   * cancelled.
+   */
+  private QuestionRouterEdgeFn.Type routeSpeculatively(String question, String runId) {
+    Speculator.Speculation retrieval = speculator.start(() -> retrieveDocuments(question));
+    Speculator.Speculation search =
+        options.isSpeculativeWebSearch() ? speculator.start(() -> searchWeb(question)) : null;
+    QuestionRouterEdgeFn.Type source;
+    try {
+      source = route(question, Optional.of(runId));
+    } catch (RuntimeException e) {
+      speculator.discard(retrieval);
+      speculator.discard(search);
+      throw e;
+    }
+    if (source == QuestionRouterEdgeFn.Type.web_search) {
+      speculator.discard(retrieval);
+      if (search != null) {
+        speculator.keep("web_search", runId, search);
+      }
+    } else {
+      speculator.keep("retrieve", runId, retrieval);
+      speculator.discard(search);
+    }
+    return source;
+  }
+
   /**
    * Node: Web search based on the re-phrased question.
    *
@@ -94,7 +334,12 @@ public class AdaptiveRagGraph {
   private Map<String, Object> webSearch(State state) {
     log.debug("---WEB SEARCH---");
     String question = state.question();
-    List<Content> result = WebSearchNodeFn.of(tavilyApiKey).apply(question);
+    return startRun(
+        state, speculated(state, "web_search").orElseGet(() -> searchWeb(question)));
+  }
+
+  private Map<String, Object> searchWeb(String question) {
+    List<Content> result = webSearcher.apply(question);
     String webResult =
         result.stream()
             .map(content -> content.textSegment().text())
@@ -111,6 +356,34 @@ public class AdaptiveRagGraph {
   private Map<String, Object> retrieve(State state) {
     log.debug("---RETRIEVE---");
     String question = state.question();
+    return startRun(
+        state, speculated(state, "retrieve").orElseGet(() -> retrieveDocuments(question)));
+  }
+
+  private Optional<Map<String, Object>> speculated(State state, String node) {
+    return state.runId().flatMap(runId -> speculator.take(node, runId));
+  }
+
+  /**
+   * Charges the routing call that preceded the first node of the run, unless the route was given
+   * or the embedding router decided it, and starts the run clock if the caller did not pass
+   * started_at. The first node is the one that finds llm_calls unset.
+   */
+  private Map<String, Object> startRun(State state, Map<String, Object> update) {
+    if (state.<Integer>value("llm_calls").isPresent()) {
+      return update;
+    }
+    boolean routedByLlm =
+        state.route().isEmpty() && !state.runId().map(routedLocally::remove).orElse(false);
+    Map<String, Object> started = new HashMap<>(update);
+    if (state.startedAt().isEmpty()) {
+      started.put("started_at", System.currentTimeMillis());
+    }
+    started.put("llm_calls", routedByLlm ? 1 : 0);
+    return started;
+  }
+
+  private Map<String, Object> retrieveDocuments(String question) {
     EmbeddingSearchResult<TextSegment> relevant = helloEmbeddingStore.search(question);
     List<String> documents =
         relevant.matches().stream().map(m -> m.embedded().text()).collect(Collectors.toList());
@@ -127,24 +400,143 @@ public class AdaptiveRagGraph {
     log.debug("---CHECK DOCUMENT RELEVANCE TO QUESTION---");
     String question = state.question();
     List<String> documents = state.documents();
-    final RetrievalGraderNodeFn grader = RetrievalGraderNodeFn.of(aiApiKey);
-    List<String> filteredDocs =
-        documents.stream()
-            .filter(
-                d -> {
-                  RetrievalGraderNodeFn.Arguments arguments =
-                      RetrievalGraderNodeFn.Arguments.of(question, d);
-                  RetrievalGraderNodeFn.Score score = grader.apply(arguments);
-                  boolean relevant = score.binaryScore.equals("yes");
-                  if (relevant) {
-                    log.debug("---GRADE: DOCUMENT RELEVANT---");
-                  } else {
-                    log.debug("---GRADE: DOCUMENT NOT RELEVANT---");
-                  }
-                  return relevant;
-                })
-            .collect(Collectors.toList());
-    return mapOf("documents", filteredDocs);
+    List<Boolean> remembered = new ArrayList<>(documents.size());
+    List<String> ungraded = new ArrayList<>();
+    for (String document : documents) {
+      Boolean verdict = verdicts.get(retrievalKey(question, document)).orElse(null);
+      remembered.add(verdict);
+      if (verdict == null) {
+        ungraded.add(document);
+      }
+    }
+    if (ungraded.size() < documents.size()) {
+      log.debug(
+          "---GRADE: {} OF {} DOCUMENTS REMEMBERED---",
+          documents.size() - ungraded.size(),
+          documents.size());
+    }
+    AtomicInteger calls = new AtomicInteger();
+    Iterator<Optional<Boolean>> graded = grade(question, ungraded, calls).iterator();
+    List<String> filteredDocs = new ArrayList<>();
+    for (int i = 0; i < documents.size(); i++) {
+      String document = documents.get(i);
+      Boolean relevant = remembered.get(i);
+      if (relevant == null) {
+        Optional<Boolean> verdict = graded.next();
+        verdict.ifPresent(v -> verdicts.put(retrievalKey(question, document), v));
+        relevant = verdict.orElse(false);
+      }
+      if (relevant) {
+        filteredDocs.add(document);
+      }
+    }
+    return mapOf("documents", filteredDocs, "llm_calls", state.llmCalls() + calls.get());
+  }
+
+  /** Grades documents in batches; one verdict per document, empty where grading failed. */
+  private List<Optional<Boolean>> grade(
+      String question, List<String> documents, AtomicInteger calls) {
+    List<List<String>> batches = packBatches(question, documents);
+    List<Optional<List<Optional<Boolean>>>> batchVerdicts;
+    if (options.getGradeParallelism() > 1 && batches.size() > 1) {
+      batchVerdicts =
+          VirtualThreads.mapOrdered(
+              batches,
+              batch -> gradeBatch(question, batch, calls),
+              options.getGradeParallelism(),
+              options.getGradeTimeout());
+    } else {
+      batchVerdicts =
+          batches.stream().map(batch -> Optional.of(gradeBatch(question, batch, calls))).toList();
+    }
+    List<Optional<Boolean>> verdicts = new ArrayList<>(documents.size());
+    for (int i = 0; i < batches.size(); i++) {
+      Optional<List<Optional<Boolean>>> relevant = batchVerdicts.get(i);
+      for (int j = 0; j < batches.get(i).size(); j++) {
+        int index = j;
+        verdicts.add(relevant.flatMap(batch -> batch.get(index)));
+      }
+    }
+    return verdicts;
+  }
+
+  private String retrievalKey(String question, String document) {
+    return verdictKey(ModelRole.RETRIEVAL_GRADER, "retrieval", List.of(question, document));
+  }
+
+  /**
+   * Memo key of a grader verdict given by the model of {@code role}; includes the model and its
+   * settings so different models do not share verdicts. All servers run the same models, so the
+   * server is left out.
+   */
+  private String verdictKey(ModelRole role, String grader, List<String> inputs) {
+    ChatModelKey model = modelRegistry.chatModelKey(role, null);
+    String grading =
+        String.join(
+            "/",
+            grader + "@" + model.getModelName(),
+            String.valueOf(model.getTemperature()),
+            String.valueOf(model.getNumPredict()),
+            String.valueOf(model.getNumCtx()));
+    return VerdictMemo.key(grading, inputs);
+  }
+
+  /**
+   * Groups documents, in order, into batches that can be graded by one LLM call: at most {@code
+   * gradeBatchSize} documents whose estimated tokens, together with the question, fit {@code
+   * gradeBatchTokenBudget}.
+   */
+  private List<List<String>> packBatches(String question, List<String> documents) {
+    int questionTokens = estimateTokens(question);
+    List<List<String>> batches = new ArrayList<>();
+    List<String> batch = new ArrayList<>();
+    int tokens = questionTokens;
+    for (String document : documents) {
+      int documentTokens = estimateTokens(document);
+      if (!batch.isEmpty()
+          && (batch.size() >= options.getGradeBatchSize()
+              || tokens + documentTokens > options.getGradeBatchTokenBudget())) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        tokens = questionTokens;
+      }
+      batch.add(document);
+      tokens += documentTokens;
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /** Verdicts on {@code batch}; empty for a document whose grading call failed or timed out. */
+  private List<Optional<Boolean>> gradeBatch(
+      String question, List<String> batch, AtomicInteger calls) {
+    return retrievalGrader
+        .applyBatchOrEach(
+            question,
+            batch,
+            options.getGradeParallelism(),
+            options.getGradeTimeout(),
+            calls::incrementAndGet)
+        .stream()
+        .map(score -> score.map(s -> isRelevant(s.binaryScore)))
+        .toList();
+  }
+
+  private static boolean isRelevant(String binaryScore) {
+    boolean relevant = "yes".equals(binaryScore);
+    if (relevant) {
+      log.debug("---GRADE: DOCUMENT RELEVANT---");
+    } else {
+      log.debug("---GRADE: DOCUMENT NOT RELEVANT---");
+    }
+    return relevant;
+  }
+
+  /** Rough token count (about four characters per token), good enough for prompt budgeting. */
+  private static int estimateTokens(String text) {
+    return (text.length() + 3) / 4;
   }
 
   /**
@@ -157,8 +549,22 @@ public class AdaptiveRagGraph {
     log.debug("---GENERATE---");
     String question = state.question();
     List<String> documents = state.documents();
-    String generation = GenerationNodeFn.of(aiApiKey).apply(question, documents); // service
-    return mapOf("generation", generation);
+    Consumer<String> onToken = state.streamId().map(tokenListeners::get).orElse(null);
+    String generation;
+    if (onToken == null) {
+      generation = generator.apply(question, documents); // service
+    } else {
+      try {
+        generation = generator.stream(question, documents, onToken);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Generation interrupted", e);
+      }
+    }
+    return Map.of(
+        "generation", generation,
+        "generations", state.generations() + 1,
+        "llm_calls", state.llmCalls() + 1);
   }
 
   /**
@@ -170,8 +576,11 @@ public class AdaptiveRagGraph {
   private Map<String, Object> transformQuery(State state) {
     log.debug("---TRANSFORM QUERY---");
     String question = state.question();
-    String betterQuestion = QuestionRewriterNodeFn.of(aiApiKey).apply(question);
-    return mapOf("question", betterQuestion);
+    String betterQuestion = questionRewriter.apply(question);
+    return Map.of(
+        "question", betterQuestion,
+        "rewrites", state.rewrites() + 1,
+        "llm_calls", state.llmCalls() + 1);
   }
 
   /**
@@ -182,22 +591,55 @@ public class AdaptiveRagGraph {
    */
   private String decideToGenerate(State state) {
     log.debug("---ASSESS GRADED DOCUMENTS---");
-    List<String> documents = state.documents();
-    if (documents.isEmpty()) {
-      log.debug("---DECISION: ALL DOCUMENTS ARE NOT RELEVANT TO QUESTION, TRANSFORM QUERY---");
-      return "transform_query";
+    return budget.decideToGenerate(state);
+  }
+
+  /**
+   * Node: Grades whether the generation is grounded in the documents and answers the question.
+   *
+   * @param state The current graph state
+   * @return Updates grade key, and best_generation key when the generation is grounded
+   */
+  private Map<String, Object> gradeGeneration(State state) {
+    if (!budget.withinBudget(state)) {
+      return mapOf("grade", "budget exhausted");
     }
-    log.debug("---DECISION: GENERATE---");
-    return "generate";
+    AtomicInteger calls = new AtomicInteger();
+    String grade = gradeGeneration_v_documentsAndQuestion(state, calls);
+    Map<String, Object> update = new HashMap<>();
+    update.put("grade", grade);
+    update.put("llm_calls", state.llmCalls() + calls.get());
+    if (!grade.equals("not supported")) {
+      update.put("best_generation", state.generation().orElseThrow());
+    }
+    return update;
   }
 
   /**
-   * Edge: Determines whether the generation is grounded in the document and answers question.
+   * Edge: Ends, regenerates or rewrites the question according to the grade, unless the run is out
+   * of budget for another attempt.
    *
    * @param state The current graph state
    * @return Decision for next node to call
    */
-  private String gradeGeneration_v_documentsAndQuestion(State state) {
+  private String decideOnGeneration(State state) {
+    return budget.decideOnGeneration(state);
+  }
+
+  /**
+   * Node: Ends a run that is out of budget with its best generation: the latest grounded one, else
+   * the latest one.
+   *
+   * @param state The current graph state
+   * @return Updates generation key and marks the run as exhausted
+   */
+  private Map<String, Object> budgetExhausted(State state) {
+    log.debug("---BUDGET EXHAUSTED: RETURN BEST GENERATION---");
+    return mapOf("generation", budget.bestAnswer(state), "budget_exhausted", true);
+  }
+
+  /** Grades the generation, adding the grader calls made to {@code calls}. */
+  private String gradeGeneration_v_documentsAndQuestion(State state, AtomicInteger calls) {
     log.debug("---CHECK HALLUCINATIONS---");
 
     String question = state.question();
@@ -205,17 +647,67 @@ public class AdaptiveRagGraph {
     String generation =
         state.generation().orElseThrow(() -> new IllegalStateException("generation is not set!"));
 
-    HallucinationGraderEdgeFn.Score score =
-        HallucinationGraderEdgeFn.of(aiApiKey)
-            .apply(HallucinationGraderEdgeFn.Arguments.of(documents, generation));
+    boolean fusedGrading = options.getGenerationGrading() == GraphOptions.GenerationGrading.FUSED;
+    String groundedKey =
+        verdictKey(
+            ModelRole.HALLUCINATION_GRADER,
+            "hallucination",
+            Stream.concat(documents.stream(), Stream.of(generation)).toList());
+    // Fused grading has the hallucination grader's model give the answer verdict too.
+    String usefulKey =
+        verdictKey(
+            fusedGrading ? ModelRole.HALLUCINATION_GRADER : ModelRole.ANSWER_GRADER,
+            "answer",
+            List.of(question, generation));
+    BooleanSupplier gradeGrounded =
+        () -> {
+          calls.incrementAndGet();
+          HallucinationGraderEdgeFn.Score score =
+              hallucinationGrader.apply(
+                  HallucinationGraderEdgeFn.Arguments.of(documents, generation));
+          return Objects.equals(score.binaryScore, "yes");
+        };
+    BooleanSupplier gradeUseful =
+        () -> {
+          calls.incrementAndGet();
+          AnswerGraderEdgeNodeFn.Score score =
+              answerGrader.apply(AnswerGraderEdgeNodeFn.Arguments.of(question, generation));
+          return Objects.equals(score.binaryScore, "yes");
+        };
+
+    GenerationGraderFn.Score fused =
+        fusedGrading
+            ? gradeFused(groundedKey, usefulKey, documents, question, generation, calls)
+            : null;
+    Future<Boolean> concurrentUseful =
+        options.getGenerationGrading() == GraphOptions.GenerationGrading.CONCURRENT
+                && verdicts.get(usefulKey).isEmpty()
+            ? graders.submit(
+                Deadline.propagate(() -> verdicts.computeIfAbsent(usefulKey, gradeUseful)))
+            : null;
+    boolean grounded;
+    try {
+      grounded =
+          fused != null
+              ? Objects.equals(fused.grounded, "yes")
+              : verdicts.computeIfAbsent(groundedKey, gradeGrounded);
+    } catch (RuntimeException e) {
+      cancel(concurrentUseful);
+      throw e;
+    }
 
-    if (Objects.equals(score.binaryScore, "yes")) {
+    if (grounded) {
       log.debug("---DECISION: GENERATION IS GROUNDED IN DOCUMENTS---");
       log.debug("---GRADE GENERATION vs QUESTION---");
-      AnswerGraderEdgeNodeFn.Score score2 =
-          AnswerGraderEdgeNodeFn.of(aiApiKey)
-              .apply(AnswerGraderEdgeNodeFn.Arguments.of(question, generation));
-      if (Objects.equals(score2.binaryScore, "yes")) {
+      boolean useful;
+      if (fused != null) {
+        useful = Objects.equals(fused.addressesQuestion, "yes");
+      } else if (concurrentUseful != null) {
+        useful = await(concurrentUseful);
+      } else {
+        useful = verdicts.computeIfAbsent(usefulKey, gradeUseful);
+      }
+      if (useful) {
         log.debug("---DECISION: GENERATION ADDRESSES QUESTION---");
         return "useful";
       }
@@ -224,10 +716,55 @@ public class AdaptiveRagGraph {
       return "not useful";
     }
 
+    cancel(concurrentUseful);
     log.debug("---DECISION: GENERATION IS NOT GROUNDED IN DOCUMENTS, RE-TRY---");
     return "not supported";
   }
 
+  /**
+   * Grades grounding and usefulness in one call and remembers both verdicts under the keys of the
+   * separate graders; {@code null} when the memo already settles the decision.
+   */
+  private GenerationGraderFn.Score gradeFused(
+      String groundedKey,
+      String usefulKey,
+      List<String> documents,
+      String question,
+      String generation,
+      AtomicInteger calls) {
+    Optional<Boolean> grounded = verdicts.get(groundedKey);
+    if (grounded.isPresent() && (!grounded.get() || verdicts.get(usefulKey).isPresent())) {
+      return null;
+    }
+    calls.incrementAndGet();
+    GenerationGraderFn.Score score =
+        generationGrader.apply(GenerationGraderFn.Arguments.of(documents, question, generation));
+    verdicts.put(groundedKey, Objects.equals(score.grounded, "yes"));
+    verdicts.put(usefulKey, Objects.equals(score.addressesQuestion, "yes"));
+    return score;
+  }
+
+  private static void cancel(Future<?> grade) {
+    if (grade != null) {
+      grade.cancel(true);
+    }
+  }
+
+  private static boolean await(Future<Boolean> grade) {
+    try {
+      return Deadline.await(grade);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      grade.cancel(true);
+      throw new IllegalStateException("Interrupted while grading", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
   /**
    * Represents the state of our graph. Attributes: question: question generation: LLM generation
    * documents: list of documents
@@ -249,5 +786,52 @@ public class AdaptiveRagGraph {
     public List<String> documents() {
       return this.<List<String>>value("documents").orElse(emptyList());
     }
+
+    /** Route decided before the run, if any; see {@link QuestionRouterEdgeFn#applyBatch}. */
+    public Optional<String> route() {
+      return value("route");
+    }
+
+    /** Id from {@link AdaptiveRagGraph#openTokenStream}; set when the caller streams tokens. */
+    public Optional<String> streamId() {
+      return value("stream_id");
+    }
+
+    /** Id from {@link AdaptiveRagGraph#openRun}; speculative routing needs it. */
+    public Optional<String> runId() {
+      return value("run_id");
+    }
+
+    /** Epoch millis at which the run started; see {@link RunBudget#withinBudget}. */
+    public Optional<Long> startedAt() {
+      return value("started_at");
+    }
+
+    public int llmCalls() {
+      return this.<Integer>value("llm_calls").orElse(0);
+    }
+
+    public int generations() {
+      return this.<Integer>value("generations").orElse(0);
+    }
+
+    public int rewrites() {
+      return this.<Integer>value("rewrites").orElse(0);
+    }
+
+    /** Verdict on the latest generation: useful, not useful, not supported or budget exhausted. */
+    public Optional<String> grade() {
+      return value("grade");
+    }
+
+    /** Latest generation graded as grounded in the documents. */
+    public Optional<String> bestGeneration() {
+      return value("best_generation");
+    }
+
+    /** Whether the run ended with its best generation because it ran out of budget. */
+    public boolean budgetExhausted() {
+      return this.<Boolean>value("budget_exhausted").orElse(false);
+    }
   }
 }
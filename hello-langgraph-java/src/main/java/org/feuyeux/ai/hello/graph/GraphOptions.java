@@ -0,0 +1,103 @@
+package org.feuyeux.ai.hello.graph;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.booleanValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.doubleValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import lombok.Builder;
+import lombok.Value;
+import org.feuyeux.ai.hello.util.DotEnvConfig;
+
+/** Tuning knobs of {@link AdaptiveRagGraph}, read from the environment or {@code .env}. */
+@Value
+@Builder
+public class GraphOptions {
+  public enum GenerationGrading {
+    /** Hallucination grader, then the answer grader if the generation is grounded. */
+    SEQUENTIAL,
+    /** Both graders at once; the answer grade is abandoned as soon as grounding fails. */
+    CONCURRENT,
+    /** One grader call returning both verdicts. */
+    FUSED
+  }
+
+  /** Max grader calls in flight while grading documents; 1 grades them one after another. */
+  @Builder.Default int gradeParallelism = 4;
+
+  /** Time allowed for one grader call before its documents are treated as not relevant. */
+  @Builder.Default Duration gradeTimeout = Duration.ofSeconds(60);
+
+  /** Max documents graded together in one LLM call; 1 grades every document separately. */
+  @Builder.Default int gradeBatchSize = 8;
+
+  /** Estimated prompt tokens (question plus documents) allowed in one batched grading call. */
+  @Builder.Default int gradeBatchTokenBudget = 3072;
+
+  /** Grader verdicts remembered across requests; 0 disables the memo. */
+  @Builder.Default int verdictMemoSize = 4096;
+
+  /** File verdicts are spilled to so they survive restarts; {@code null} keeps them in memory. */
+  @Builder.Default Path verdictMemoPath = null;
+
+  /** Starts vector retrieval while the question is routed; the result is dropped on web search. */
+  @Builder.Default boolean speculativeRetrieval = false;
+
+  /** With {@code speculativeRetrieval}, also starts the web search while routing. */
+  @Builder.Default boolean speculativeWebSearch = false;
+
+  /** Routes confident questions by embedding similarity and only ambiguous ones by the LLM. */
+  @Builder.Default boolean embeddingRouter = false;
+
+  /** Min difference of centroid similarities for the embedding router to decide by itself. */
+  @Builder.Default double routerMargin = 0.05;
+
+  /** {@code route<TAB>question} lines labelling router examples; {@code null} uses built-ins. */
+  @Builder.Default Path routerExamplesPath = null;
+
+  /** Evaluates the embedding router against its examples at startup, one LLM call each. */
+  @Builder.Default boolean routerEvaluation = false;
+
+  @Builder.Default GenerationGrading generationGrading = GenerationGrading.SEQUENTIAL;
+
+  /** Answers generated per run, counting re-generations of ungrounded answers. */
+  @Builder.Default int maxGenerations = 3;
+
+  /** Question rewrites per run. */
+  @Builder.Default int maxRewrites = 2;
+
+  /** LLM calls per run; routing counts as one call unless the embedding router decides. */
+  @Builder.Default int maxLlmCalls = 24;
+
+  /** Wall-clock time after which a run stops looping; zero disables the deadline. */
+  @Builder.Default Duration runDeadline = Duration.ofSeconds(120);
+
+  public static GraphOptions fromEnv() {
+    return GraphOptions.builder()
+        .gradeParallelism(intValueOf("GRADE_PARALLELISM", 4))
+        .gradeTimeout(Duration.ofSeconds(intValueOf("GRADE_TIMEOUT_SECONDS", 60)))
+        .gradeBatchSize(intValueOf("GRADE_BATCH_SIZE", 8))
+        .gradeBatchTokenBudget(intValueOf("GRADE_BATCH_TOKEN_BUDGET", 3072))
+        .verdictMemoSize(intValueOf("VERDICT_MEMO_SIZE", 4096))
+        .verdictMemoPath(DotEnvConfig.valueOf("VERDICT_MEMO_PATH").map(Path::of).orElse(null))
+        .speculativeRetrieval(booleanValueOf("SPECULATIVE_RETRIEVAL", false))
+        .speculativeWebSearch(booleanValueOf("SPECULATIVE_WEB_SEARCH", false))
+        .embeddingRouter(booleanValueOf("EMBEDDING_ROUTER", false))
+        .routerMargin(doubleValueOf("ROUTER_MARGIN", 0.05))
+        .routerExamplesPath(DotEnvConfig.valueOf("ROUTER_EXAMPLES").map(Path::of).orElse(null))
+        .routerEvaluation(booleanValueOf("ROUTER_EVALUATION", false))
+        .generationGrading(
+            GenerationGrading.valueOf(
+                DotEnvConfig.valueOf("GENERATION_GRADING")
+                    .orElse("sequential")
+                    .trim()
+                    .toUpperCase(Locale.ROOT)))
+        .maxGenerations(intValueOf("MAX_GENERATIONS", 3))
+        .maxRewrites(intValueOf("MAX_REWRITES", 2))
+        .maxLlmCalls(intValueOf("MAX_LLM_CALLS", 24))
+        .runDeadline(Duration.ofSeconds(intValueOf("RUN_DEADLINE_SECONDS", 120)))
+        .build();
+  }
+}
@@ -0,0 +1,73 @@
+package org.feuyeux.ai.hello.graph;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounds a run of {@link AdaptiveRagGraph} by its generations, rewrites, LLM calls and deadline
+ * from {@link GraphOptions}, and picks the answer a run that ran out of budget ends with.
+ */
+@Slf4j(topic = "AdaptiveRag")
+public class RunBudget {
+  /** Answer of a run that ran out of budget before generating anything. */
+  static final String NO_ANSWER = "I don't know.";
+
+  private final GraphOptions options;
+
+  public RunBudget(GraphOptions options) {
+    this.options = options;
+  }
+
+  /** Whether to generate, rewrite the question, or end because the budget is exhausted. */
+  public String decideToGenerate(AdaptiveRagGraph.State state) {
+    if (!withinBudget(state)) {
+      return "budget exhausted";
+    }
+    if (state.documents().isEmpty()) {
+      if (state.rewrites() >= options.getMaxRewrites()) {
+        log.debug("---DECISION: NO RELEVANT DOCUMENTS AND NO REWRITES LEFT---");
+        return "budget exhausted";
+      }
+      log.debug("---DECISION: ALL DOCUMENTS ARE NOT RELEVANT TO QUESTION, TRANSFORM QUERY---");
+      return "transform_query";
+    }
+    log.debug("---DECISION: GENERATE---");
+    return "generate";
+  }
+
+  /** The grade of the latest generation, or budget exhausted when another attempt is over it. */
+  public String decideOnGeneration(AdaptiveRagGraph.State state) {
+    String grade = state.grade().orElseThrow(() -> new IllegalStateException("grade is not set!"));
+    if (grade.equals("useful") || grade.equals("budget exhausted")) {
+      return grade;
+    }
+    if (grade.equals("not supported") && state.generations() >= options.getMaxGenerations()) {
+      log.debug("---DECISION: NO GENERATIONS LEFT---");
+      return "budget exhausted";
+    }
+    if (grade.equals("not useful") && state.rewrites() >= options.getMaxRewrites()) {
+      log.debug("---DECISION: NO REWRITES LEFT---");
+      return "budget exhausted";
+    }
+    return withinBudget(state) ? grade : "budget exhausted";
+  }
+
+  /** Whether the run has LLM calls and time left; logs the reason when it has not. */
+  public boolean withinBudget(AdaptiveRagGraph.State state) {
+    if (state.llmCalls() >= options.getMaxLlmCalls()) {
+      log.debug("---BUDGET: {} LLM CALLS USED---", state.llmCalls());
+      return false;
+    }
+    long deadlineMillis = options.getRunDeadline().toMillis();
+    long elapsedMillis = state.startedAt().map(t -> System.currentTimeMillis() - t).orElse(0L);
+    if (deadlineMillis > 0 && elapsedMillis >= deadlineMillis) {
+      log.debug("---BUDGET: DEADLINE PASSED AFTER {} MS---", elapsedMillis);
+      return false;
+    }
+    return true;
+  }
+
+  /** The latest grounded generation, else the latest one, else {@value #NO_ANSWER}. */
+  public String bestAnswer(AdaptiveRagGraph.State state) {
+    return state.bestGeneration().or(state::generation).orElse(NO_ANSWER);
+  }
+}
@@ -0,0 +1,144 @@
+package org.feuyeux.ai.hello.graph;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.Deadline;
+
+/**
+ * Runs node work ahead of the decision that selects the node. A speculation that is kept is taken
+ * by that node in the same graph run; one that is discarded, or still kept when its run finishes,
+ * is cancelled.
+ */
+@Slf4j
+public final class Speculator {
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final ConcurrentMap<String, Speculation> kept = new ConcurrentHashMap<>();
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong used = new AtomicLong();
+  private final AtomicLong discarded = new AtomicLong();
+  private final AtomicLong workNanos = new AtomicLong();
+  private final AtomicLong usedWorkNanos = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+
+  /**
+   * Counters of speculative work. {@code workMillis} is the time spent on all finished
+   * speculations, {@code usedWorkMillis} on the ones a node took, and {@code waitMillis} the time
+   * nodes still waited for them.
+   */
+  @Value(staticConstructor = "of")
+  public static class Stats {
+    long started;
+    long used;
+    long discarded;
+    long workMillis;
+    long usedWorkMillis;
+    long waitMillis;
+
+    /** Time taken off the critical path by speculation. */
+    public long savedMillis() {
+      return usedWorkMillis - waitMillis;
+    }
+
+    /** Time spent on speculations no node used. */
+    public long wastedMillis() {
+      return workMillis - usedWorkMillis;
+    }
+  }
+
+  /** Node work started ahead of the decision that selects the node. */
+  public final class Speculation {
+    private final Future<Map<String, Object>> result;
+    private volatile long elapsedNanos;
+
+    private Speculation(Supplier<Map<String, Object>> work) {
+      this.result =
+          executor.submit(
+              Deadline.propagate(
+                  () -> {
+                    long start = System.nanoTime();
+                    try {
+                      return work.get();
+                    } finally {
+                      elapsedNanos = System.nanoTime() - start;
+                      workNanos.addAndGet(elapsedNanos);
+                    }
+                  }));
+    }
+  }
+
+  public Speculation start(Supplier<Map<String, Object>> work) {
+    started.incrementAndGet();
+    return new Speculation(work);
+  }
+
+  /** Keeps {@code speculation} for {@code node} in run {@code runId}, replacing any kept one. */
+  public void keep(String node, String runId, Speculation speculation) {
+    discard(kept.put(key(node, runId), speculation));
+  }
+
+  /** Cancels {@code speculation}; {@code null} is ignored. */
+  public void discard(Speculation speculation) {
+    if (speculation != null) {
+      speculation.result.cancel(true);
+      discarded.incrementAndGet();
+    }
+  }
+
+  /** The kept result of {@code node} in run {@code runId}; empty if none or if it failed. */
+  public Optional<Map<String, Object>> take(String node, String runId) {
+    Speculation speculation = kept.remove(key(node, runId));
+    if (speculation == null) {
+      return Optional.empty();
+    }
+    long start = System.nanoTime();
+    try {
+      Map<String, Object> result = Deadline.await(speculation.result);
+      waitNanos.addAndGet(System.nanoTime() - start);
+      usedWorkNanos.addAndGet(speculation.elapsedNanos);
+      used.incrementAndGet();
+      return Optional.of(result);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      speculation.result.cancel(true);
+      throw new IllegalStateException("Interrupted while waiting for " + node, e);
+    } catch (ExecutionException e) {
+      log.warn("Speculative {} failed, running it again: {}", node, String.valueOf(e.getCause()));
+      return Optional.empty();
+    }
+  }
+
+  /** Cancels what run {@code runId} kept but no node took, e.g. when the run failed. */
+  public void finish(String runId) {
+    String prefix = runId + "\n";
+    for (String key : kept.keySet()) {
+      if (key.startsWith(prefix)) {
+        discard(kept.remove(key));
+      }
+    }
+  }
+
+  public Stats stats() {
+    return Stats.of(
+        started.get(),
+        used.get(),
+        discarded.get(),
+        TimeUnit.NANOSECONDS.toMillis(workNanos.get()),
+        TimeUnit.NANOSECONDS.toMillis(usedWorkNanos.get()),
+        TimeUnit.NANOSECONDS.toMillis(waitNanos.get()));
+  }
+
+  private static String key(String node, String runId) {
+    return runId + "\n" + node;
+  }
+}
@@ -0,0 +1,162 @@
+package org.feuyeux.ai.hello.graph;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.LruCache;
+
+/**
+ * Yes/no grader verdicts keyed by a hash of the grader and its inputs. The chat model runs at
+ * temperature 0, so the same inputs get the same verdict and a remembered one saves an LLM call.
+ * With a spill file, verdicts are appended as {@code hash<TAB>yes|no} lines and reloaded on start.
+ * It is rewritten with the retained verdicts only on start, and whenever it grows past {@link
+ * #COMPACT_FACTOR} times the memo's capacity.
+ */
+@Slf4j
+public final class VerdictMemo {
+  static final int COMPACT_FACTOR = 2;
+
+  private final int maxEntries;
+  private final LruCache<String, Boolean> verdicts;
+  private final Path spill;
+  // Lines in the spill file, guarded by this.
+  private int spilledLines;
+
+  private VerdictMemo(int maxEntries, Path spill) {
+    this.maxEntries = maxEntries;
+    this.verdicts = new LruCache<>(maxEntries, Duration.ZERO);
+    this.spill = spill;
+  }
+
+  public static VerdictMemo inMemory(int maxEntries) {
+    return new VerdictMemo(maxEntries, null);
+  }
+
+  /** Loads the verdicts spilled to {@code spill}, which is created on the first new verdict. */
+  public static VerdictMemo open(int maxEntries, Path spill) {
+    VerdictMemo memo = new VerdictMemo(maxEntries, spill);
+    try {
+      memo.load();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Ignoring unreadable verdict memo {}: {}", spill, e.getMessage());
+    }
+    return memo;
+  }
+
+  /** Hash of a grader name and its inputs, length-prefixed so that parts cannot run together. */
+  public static String key(String grader, List<String> parts) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      update(digest, grader);
+      for (String part : parts) {
+        update(digest, part);
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public Optional<Boolean> get(String key) {
+    return verdicts.get(key);
+  }
+
+  public void put(String key, boolean verdict) {
+    if (maxEntries <= 0) {
+      return;
+    }
+    verdicts.put(key, verdict);
+    if (spill != null) {
+      append(key, verdict);
+    }
+  }
+
+  /** Returns the remembered verdict for {@code key}, or grades and remembers it. */
+  public boolean computeIfAbsent(String key, BooleanSupplier grade) {
+    Optional<Boolean> known = get(key);
+    if (known.isPresent()) {
+      return known.get();
+    }
+    boolean verdict = grade.getAsBoolean();
+    put(key, verdict);
+    return verdict;
+  }
+
+  public LruCache.Stats stats() {
+    return verdicts.stats();
+  }
+
+  private synchronized void append(String key, boolean verdict) {
+    try {
+      Path parent = spill.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      Files.writeString(
+          spill,
+          key + "\t" + (verdict ? "yes" : "no") + "\n",
+          UTF_8,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+      if (++spilledLines > COMPACT_FACTOR * maxEntries) {
+        compact();
+      }
+    } catch (IOException e) {
+      log.warn("Failed to spill verdict to {}: {}", spill, e.getMessage());
+    }
+  }
+
+  private void load() throws IOException {
+    if (!Files.exists(spill)) {
+      return;
+    }
+    int lines = 0;
+    for (String line : Files.readAllLines(spill, UTF_8)) {
+      String[] fields = line.split("\t");
+      if (fields.length == 2) {
+        verdicts.put(fields[0], "yes".equals(fields[1]));
+        lines++;
+      }
+    }
+    log.info("Loaded {} grader verdicts from {}", verdicts.size(), spill);
+    spilledLines = lines;
+    // Rewriting once on start is cheap, so any dropped or repeated line is reason enough.
+    if (lines > verdicts.size()) {
+      compact();
+    }
+  }
+
+  /** Rewrites the spill file with the retained verdicts only. */
+  private synchronized void compact() throws IOException {
+    Path parent = spill.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(parent, spill.getFileName().toString(), ".tmp");
+    List<Map.Entry<String, Boolean>> retained = verdicts.snapshot();
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+      for (Map.Entry<String, Boolean> verdict : retained) {
+        writer.write(verdict.getKey() + "\t" + (verdict.getValue() ? "yes" : "no"));
+        writer.newLine();
+      }
+    }
+    Files.move(tmp, spill, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    spilledLines = retained.size();
+  }
+
+  private static void update(MessageDigest digest, String part) {
+    byte[] bytes = part == null ? new byte[0] : part.getBytes(UTF_8);
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
+}
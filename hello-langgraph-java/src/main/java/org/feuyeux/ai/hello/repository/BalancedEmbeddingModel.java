@@ -0,0 +1,35 @@
+package org.feuyeux.ai.hello.repository;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import java.util.List;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+
+/**
+ * Embedding model spread over the servers of {@code baseUrls}; its calls go through a lane of each
+ * server's {@link AdaptiveLimiter}.
+ */
+class BalancedEmbeddingModel implements EmbeddingModel {
+  private final ModelRegistry modelRegistry;
+  private final String baseUrls;
+  private final AdaptiveLimiter.Lane lane;
+
+  BalancedEmbeddingModel(ModelRegistry modelRegistry, String baseUrls, AdaptiveLimiter.Lane lane) {
+    this.modelRegistry = modelRegistry;
+    this.baseUrls = baseUrls;
+    this.lane = lane;
+  }
+
+  @Override
+  public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+    return modelRegistry.call(
+        baseUrls, lane, url -> modelRegistry.embeddingModel(url).embedAll(segments));
+  }
+
+  @Override
+  public int dimension() {
+    return modelRegistry.call(baseUrls, lane, url -> modelRegistry.embeddingModel(url).dimension());
+  }
+}
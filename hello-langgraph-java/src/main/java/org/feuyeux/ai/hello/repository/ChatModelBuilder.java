@@ -1,21 +1,41 @@
 package org.feuyeux.ai.hello.repository;
 
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
-import java.time.Duration;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 
 public class ChatModelBuilder {
 
   public static ChatModel buildChatModel(String baseUrl) {
+    return buildChatModel(ChatModelKey.of(baseUrl));
+  }
+
+  public static ChatModel buildChatModel(ChatModelKey key) {
     ChatModel chatLanguageModel =
         OllamaChatModel.builder()
-            .baseUrl(baseUrl)
-            .modelName("qwen2.5")
-            .timeout(Duration.ofMinutes(2))
+            .baseUrl(key.getBaseUrl())
+            .modelName(key.getModelName())
+            .timeout(key.getTimeout())
             .logRequests(true)
             .logResponses(true)
-            .temperature(0.0)
+            .temperature(key.getTemperature())
+            .numPredict(key.getNumPredict())
+            .numCtx(key.getNumCtx())
             .build();
     return chatLanguageModel;
   }
+
+  public static StreamingChatModel buildStreamingChatModel(ChatModelKey key) {
+    return OllamaStreamingChatModel.builder()
+        .baseUrl(key.getBaseUrl())
+        .modelName(key.getModelName())
+        .timeout(key.getTimeout())
+        .logRequests(true)
+        .logResponses(true)
+        .temperature(key.getTemperature())
+        .numPredict(key.getNumPredict())
+        .numCtx(key.getNumCtx())
+        .build();
+  }
 }
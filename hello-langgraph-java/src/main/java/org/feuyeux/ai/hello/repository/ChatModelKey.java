@@ -0,0 +1,37 @@
+package org.feuyeux.ai.hello.repository;
+
+import java.time.Duration;
+import lombok.Value;
+import org.feuyeux.ai.hello.util.DotEnvConfig;
+
+/** Identity of a chat model configuration, used to share one client per distinct setup. */
+@Value(staticConstructor = "of")
+public class ChatModelKey {
+  static final String DEFAULT_MODEL = "qwen2.5";
+
+  String baseUrl;
+  String modelName;
+  Double temperature;
+  Duration timeout;
+  /** Cap of generated tokens, {@code null} for the server default. */
+  Integer numPredict;
+  /** Context window in tokens, {@code null} for the server default. */
+  Integer numCtx;
+
+  public static ChatModelKey of(String baseUrl) {
+    return of(baseUrl, DEFAULT_MODEL, 0.0, modelTimeout(), null, null);
+  }
+
+  /** The same model at {@code baseUrl}. */
+  public ChatModelKey at(String baseUrl) {
+    return of(baseUrl, modelName, temperature, timeout, numPredict, numCtx);
+  }
+
+  /**
+   * Upper bound of one model call, {@code MODEL_TIMEOUT_SECONDS}; a request's {@link
+   * org.feuyeux.ai.hello.util.Deadline} cuts calls shorter.
+   */
+  public static Duration modelTimeout() {
+    return Duration.ofSeconds(DotEnvConfig.intValueOf("MODEL_TIMEOUT_SECONDS", 120));
+  }
+}
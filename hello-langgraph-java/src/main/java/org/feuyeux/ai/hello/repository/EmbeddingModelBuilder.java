@@ -2,7 +2,6 @@ package org.feuyeux.ai.hello.repository;
 
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
-import java.time.Duration;
 
 public class EmbeddingModelBuilder {
 
@@ -10,7 +9,7 @@ public class EmbeddingModelBuilder {
     return OllamaEmbeddingModel.builder()
         .baseUrl(baseUrl)
         .modelName("qwen2.5")
-        .timeout(Duration.ofMinutes(2))
+        .timeout(ChatModelKey.modelTimeout())
         .build();
   }
 }
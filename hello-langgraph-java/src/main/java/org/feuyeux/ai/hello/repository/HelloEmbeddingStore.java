@@ -1,13 +1,7 @@
 package org.feuyeux.ai.hello.repository;
 
-import static org.feuyeux.ai.hello.repository.EmbeddingModelBuilder.buildEmbeddingModel;
 import static org.feuyeux.ai.hello.service.LanggraphService.getOllamaBaseUrl;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.UrlDocumentLoader;
-import dev.langchain4j.data.document.parser.TextDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentByParagraphSplitter;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -18,56 +12,212 @@ import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.chroma.ChromaEmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.repository.source.DocumentSource;
+import org.feuyeux.ai.hello.repository.source.FileDocumentSource;
+import org.feuyeux.ai.hello.repository.source.UrlDocumentSource;
+import org.feuyeux.ai.hello.repository.store.HnswOptions;
+import org.feuyeux.ai.hello.repository.store.MappedEmbeddingStore;
+import org.feuyeux.ai.hello.repository.store.QuantizationOptions;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+import org.feuyeux.ai.hello.util.DotEnvConfig;
+import org.feuyeux.ai.hello.util.LruCache;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 @Slf4j
 @Repository
 public class HelloEmbeddingStore {
+  // Nearest segments per probe question when estimating the centroid of a store like Chroma.
+  private static final int CENTROID_SAMPLES_PER_PROBE = 16;
+  private static final String DEFAULT_URLS =
+      String.join(
+          ",",
+          "https://lilianweng.github.io/posts/2023-06-23-agent/",
+          "https://lilianweng.github.io/posts/2023-03-15-prompt-engineering/",
+          "https://lilianweng.github.io/posts/2023-10-25-adv-attack-llm/");
+
+  @Autowired private ModelRegistry modelRegistry;
+
   private EmbeddingModel embeddingModel;
+  // Same model in the bulk lane of the limiter, so ingestion yields to queries.
+  private EmbeddingModel ingestionModel;
+  private QueryEmbeddingCache queryEmbeddingCache;
+  // Bumped whenever ingestion changes the stored segments.
+  private final AtomicLong corpusVersion = new AtomicLong();
   private EmbeddingStore<TextSegment> embeddingStore;
+  // Manifest of what embeddingStore already holds, null when it does not survive restarts.
+  private Path manifestPath;
+  private final SearchOptions searchOptions = SearchOptions.fromEnv();
+
+  public static Path getIngestManifestPath() {
+    return Path.of(
+        DotEnvConfig.valueOf("INGEST_MANIFEST_PATH").orElse("index/ingest-manifest.tsv"));
+  }
+
+  public static Path getEmbeddingStoreDir() {
+    return Path.of(DotEnvConfig.valueOf("EMBEDDING_STORE_DIR").orElse("index/vectors"));
+  }
+
+  /**
+   * Sources to ingest: the comma-separated {@code INGEST_URLS}, plus the files below {@code
+   * INGEST_DIR} matching {@code INGEST_GLOB} when a directory is configured. Set {@code
+   * INGEST_URLS} to an empty value to work offline.
+   */
+  static List<DocumentSource> getIngestSources(IngestionOptions options) throws IOException {
+    List<DocumentSource> sources = new ArrayList<>();
+    Arrays.stream(DotEnvConfig.valueOf("INGEST_URLS").orElse(DEFAULT_URLS).split(","))
+        .map(String::trim)
+        .filter(url -> !url.isEmpty())
+        .forEach(url -> sources.add(UrlDocumentSource.of(url)));
+    Optional<String> dir = DotEnvConfig.valueOf("INGEST_DIR");
+    if (dir.isPresent()) {
+      String glob = DotEnvConfig.valueOf("INGEST_GLOB").orElse("**");
+      sources.addAll(FileDocumentSource.scan(Path.of(dir.get()), glob, options.getChunkSize()));
+    }
+    return sources;
+  }
 
   public EmbeddingStore<TextSegment> buildEmbeddingStore() {
-    EmbeddingSearchResult<TextSegment> relevant = search("agent memory");
-    List<EmbeddingMatch<TextSegment>> matches = relevant.matches();
-    if (matches.size() < 1) {
-      log.info("Building EmbeddingStore...");
-      List.of(
-              "https://lilianweng.github.io/posts/2023-06-23-agent/",
-              "https://lilianweng.github.io/posts/2023-03-15-prompt-engineering/",
-              "https://lilianweng.github.io/posts/2023-10-25-adv-attack-llm/")
-          .forEach(
-              url -> {
-                try {
-                  Document document = UrlDocumentLoader.load(url, new TextDocumentParser());
-                  int maxSegmentSize = 1024;
-                  DocumentSplitter splitter = new DocumentByParagraphSplitter(maxSegmentSize, 8);
-                  List<TextSegment> segments = splitter.split(document);
-                  log.info("url:{} segments:{}", url, segments.size());
-                  segments.forEach(
-                      segment -> {
-                        Embedding embedding = embeddingModel.embed(segment).content();
-                        embeddingStore.add(embedding, segment);
-                      });
-                } catch (Exception e) {
-                  log.error("Error loading document from {}: {}", url, e.getMessage());
-                }
-              });
+    IngestionManifest manifest =
+        manifestPath != null ? IngestionManifest.load(manifestPath) : IngestionManifest.inMemory();
+    if (manifestPath != null) {
+      boolean stored = hasSegments();
+      if (!manifest.isEmpty() && !stored) {
+        log.warn("EmbeddingStore is empty but the ingestion manifest is not, ignoring manifest");
+        manifest.clear();
+      } else if (manifest.isEmpty()
+          && stored
+          && !DotEnvConfig.booleanValueOf("INGEST_REINDEX", false)) {
+        // Without a manifest every segment would be embedded again, and data written with other
+        // ids would be duplicated.
+        log.warn(
+            "EmbeddingStore already holds segments but there is no ingestion manifest at {},"
+                + " skipping ingestion; set INGEST_REINDEX=true to embed every source again and"
+                + " record one",
+            manifestPath);
+        return embeddingStore;
+      }
+    }
+    log.info("Building EmbeddingStore...");
+    IngestionOptions options = IngestionOptions.fromEnv();
+    IngestionPipeline pipeline = new IngestionPipeline(ingestionModel, embeddingStore, options);
+    try {
+      IngestionReport report = pipeline.ingest(getIngestSources(options), manifest);
+      if (report.getStoredSegments() > 0 || report.getRemovedSegments() > 0) {
+        corpusVersion.incrementAndGet();
+      }
+    } catch (IOException e) {
+      log.error("Error listing ingestion sources: {}", e.getMessage());
+    } catch (IllegalStateException e) {
+      // Part of the corpus may have changed before the run stopped.
+      log.error("{}: {}", e.getMessage(), String.valueOf(e.getCause()));
+      corpusVersion.incrementAndGet();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Building EmbeddingStore was interrupted");
     }
     log.info("EmbeddingStore is ready.");
     return embeddingStore;
   }
 
+  private boolean hasSegments() {
+    if (embeddingStore instanceof MappedEmbeddingStore mapped) {
+      return mapped.size() > 0;
+    }
+    // No score threshold: any stored segment counts, however unrelated to the query.
+    EmbeddingSearchRequest request =
+        EmbeddingSearchRequest.builder()
+            .queryEmbedding(embedQuery("agent memory"))
+            .maxResults(1)
+            .build();
+    return !embeddingStore.search(request).matches().isEmpty();
+  }
+
+  /** Changes whenever ingestion stores or removes segments; answers from before are stale. */
+  public long getCorpusVersion() {
+    return corpusVersion.get();
+  }
+
+  public Embedding embedQuery(String query) {
+    return queryEmbeddingCache.embed(query);
+  }
+
+  /**
+   * Mean direction of the indexed segments. A store that cannot enumerate them, like Chroma, gets
+   * an estimate from the segments nearest to each of {@code probes}; empty when nothing is stored.
+   */
+  public Optional<float[]> getCorpusCentroid(Collection<String> probes) {
+    if (embeddingStore instanceof MappedEmbeddingStore mapped) {
+      return Optional.ofNullable(mapped.centroid());
+    }
+    Map<String, float[]> sampled = new HashMap<>();
+    for (String probe : probes) {
+      EmbeddingSearchRequest request =
+          EmbeddingSearchRequest.builder()
+              .queryEmbedding(embedQuery(probe))
+              .maxResults(CENTROID_SAMPLES_PER_PROBE)
+              .build();
+      for (EmbeddingMatch<TextSegment> match : embeddingStore.search(request).matches()) {
+        if (match.embedding() != null) {
+          sampled.putIfAbsent(match.embeddingId(), match.embedding().vector());
+        }
+      }
+    }
+    double[] sum = null;
+    for (float[] vector : sampled.values()) {
+      double norm = 0;
+      for (float x : vector) {
+        norm += x * x;
+      }
+      if (sum == null) {
+        sum = new double[vector.length];
+      }
+      for (int i = 0; i < vector.length && norm > 0; i++) {
+        sum[i] += vector[i] / Math.sqrt(norm);
+      }
+    }
+    if (sum == null) {
+      return Optional.empty();
+    }
+    float[] centroid = new float[sum.length];
+    for (int i = 0; i < sum.length; i++) {
+      centroid[i] = (float) (sum[i] / sampled.size());
+    }
+    return Optional.of(centroid);
+  }
+
   public EmbeddingSearchResult<TextSegment> search(String query) {
-    Embedding queryEmbedding = embeddingModel.embed(query).content();
+    return search(query, searchOptions);
+  }
+
+  public EmbeddingSearchResult<TextSegment> search(String query, SearchOptions options) {
+    Embedding queryEmbedding = embedQuery(query);
     EmbeddingSearchRequest searchRequest =
         EmbeddingSearchRequest.builder()
             .queryEmbedding(queryEmbedding)
-            .maxResults(1)
-            .minScore(0.0)
+            .maxResults(options.fetchSize())
+            .minScore(options.getMinScore())
             .build();
-    return embeddingStore.search(searchRequest);
+    EmbeddingSearchResult<TextSegment> result = embeddingStore.search(searchRequest);
+    if (!options.isMmr() || result.matches().size() <= options.getMaxResults()) {
+      return result;
+    }
+    return new EmbeddingSearchResult<>(
+        MaximalMarginalRelevance.select(
+            queryEmbedding, result.matches(), options.getMaxResults(), options.getMmrLambda()));
   }
 
   @PostConstruct
@@ -81,19 +231,55 @@ public class HelloEmbeddingStore {
               .logRequests(true)
               .logResponses(true)
               .build();
+      manifestPath = getIngestManifestPath();
       log.info("ChromaEmbeddingStore initialized successfully");
     } catch (Exception e) {
       log.warn(
-          "Failed to initialize ChromaEmbeddingStore: {}. Using InMemoryEmbeddingStore instead.",
+          "Failed to initialize ChromaEmbeddingStore: {}. Using MappedEmbeddingStore instead.",
           e.getMessage());
-      embeddingStore = new InMemoryEmbeddingStore<>();
+      initLocalStore();
     }
 
-    embeddingModel = buildEmbeddingModel(getOllamaBaseUrl());
+    embeddingModel =
+        new BalancedEmbeddingModel(
+            modelRegistry, getOllamaBaseUrl(), AdaptiveLimiter.Lane.EMBEDDING);
+    ingestionModel =
+        new BalancedEmbeddingModel(modelRegistry, getOllamaBaseUrl(), AdaptiveLimiter.Lane.BULK);
+    queryEmbeddingCache = QueryEmbeddingCache.fromEnv(embeddingModel);
     try {
       buildEmbeddingStore();
     } catch (Exception e) {
       log.error("Error building embedding store: {}", e.getMessage());
     }
   }
+
+  private void initLocalStore() {
+    Path dir = getEmbeddingStoreDir();
+    try {
+      HnswOptions hnswOptions =
+          DotEnvConfig.booleanValueOf("HNSW_ENABLED", true) ? HnswOptions.fromEnv() : null;
+      embeddingStore =
+          MappedEmbeddingStore.open(dir, hnswOptions, QuantizationOptions.fromEnv());
+      manifestPath = dir.resolve("ingest-manifest.tsv");
+    } catch (IOException | RuntimeException e) {
+      log.warn(
+          "Failed to open MappedEmbeddingStore in {}: {}. Using InMemoryEmbeddingStore instead.",
+          dir,
+          e.getMessage());
+      embeddingStore = new InMemoryEmbeddingStore<>();
+      manifestPath = null;
+    }
+  }
+
+  public LruCache.Stats getQueryEmbeddingCacheStats() {
+    return queryEmbeddingCache.stats();
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    log.info("Query embedding cache: {}", queryEmbeddingCache.stats());
+    if (embeddingStore instanceof Closeable closeable) {
+      closeable.close();
+    }
+  }
 }
@@ -0,0 +1,129 @@
+package org.feuyeux.ai.hello.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records which segments of each source are already in the embedding store: source → segment
+ * content hash → embedding id. Ingestion uses it to embed only new or changed segments and to
+ * delete segments that disappeared. Persisted as a tab-separated file, one segment per line.
+ */
+@Slf4j
+public class IngestionManifest {
+  private final Path path;
+  private final ConcurrentMap<String, ConcurrentMap<String, String>> sources =
+      new ConcurrentHashMap<>();
+
+  private IngestionManifest(Path path) {
+    this.path = path;
+  }
+
+  /** A manifest that is never written, for stores that do not survive a restart. */
+  public static IngestionManifest inMemory() {
+    return new IngestionManifest(null);
+  }
+
+  public static IngestionManifest load(Path path) {
+    IngestionManifest manifest = new IngestionManifest(path);
+    if (Files.exists(path)) {
+      try {
+        for (String line : Files.readAllLines(path, UTF_8)) {
+          String[] fields = line.split("\t");
+          if (fields.length == 3) {
+            manifest.put(fields[0], fields[1], fields[2]);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      log.info("Loaded ingestion manifest {} ({} segments)", path, manifest.size());
+    }
+    return manifest;
+  }
+
+  public Set<String> sources() {
+    return Set.copyOf(sources.keySet());
+  }
+
+  /** Segments of {@code source} as content hash → embedding id. */
+  public Map<String, String> segments(String source) {
+    return Map.copyOf(sources.getOrDefault(source, new ConcurrentHashMap<>()));
+  }
+
+  public boolean isEmpty() {
+    return sources.isEmpty();
+  }
+
+  public int size() {
+    return sources.values().stream().mapToInt(Map::size).sum();
+  }
+
+  void put(String source, String hash, String embeddingId) {
+    sources.computeIfAbsent(source, s -> new ConcurrentHashMap<>()).put(hash, embeddingId);
+  }
+
+  void remove(String source, List<String> hashes) {
+    ConcurrentMap<String, String> segments = sources.get(source);
+    if (segments != null) {
+      hashes.forEach(segments::remove);
+      sources.remove(source, Map.of());
+    }
+  }
+
+  public void clear() {
+    sources.clear();
+  }
+
+  /** Writes the manifest atomically; a no-op for {@link #inMemory()} manifests. */
+  public void save() {
+    if (path == null) {
+      return;
+    }
+    try {
+      Path parent = path.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+        for (Map.Entry<String, ConcurrentMap<String, String>> source : sources.entrySet()) {
+          for (Map.Entry<String, String> segment : source.getValue().entrySet()) {
+            writer.write(source.getKey() + "\t" + segment.getKey() + "\t" + segment.getValue());
+            writer.newLine();
+          }
+        }
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static String contentHash(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(text.getBytes(UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Deterministic id, so re-adding a segment after a lost manifest replaces it in place. */
+  static String embeddingId(String source, String hash) {
+    return UUID.nameUUIDFromBytes((source + "\n" + hash).getBytes(UTF_8)).toString();
+  }
+}
@@ -0,0 +1,40 @@
+package org.feuyeux.ai.hello.repository;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Sizing of the {@link IngestionPipeline} stages. */
+@Value
+@Builder
+public class IngestionOptions {
+  /** Sources loaded and split at the same time. */
+  @Builder.Default int loadParallelism = 4;
+
+  /** Concurrent {@code embedAll} calls against the embedding model. */
+  @Builder.Default int embedParallelism = 2;
+
+  /** Segments per {@code embedAll} and {@code addAll} call. */
+  @Builder.Default int batchSize = 32;
+
+  /** Segments buffered between splitting and embedding before loaders block. */
+  @Builder.Default int queueCapacity = 256;
+
+  @Builder.Default int maxSegmentSize = 1024;
+
+  @Builder.Default int maxOverlapSize = 8;
+
+  /** Characters per document handed over by streamed sources such as local files. */
+  @Builder.Default int chunkSize = 1 << 20;
+
+  public static IngestionOptions fromEnv() {
+    return IngestionOptions.builder()
+        .loadParallelism(intValueOf("INGEST_LOAD_PARALLELISM", 4))
+        .embedParallelism(intValueOf("INGEST_EMBED_PARALLELISM", 2))
+        .batchSize(intValueOf("INGEST_BATCH_SIZE", 32))
+        .queueCapacity(intValueOf("INGEST_QUEUE_CAPACITY", 256))
+        .chunkSize(intValueOf("INGEST_CHUNK_SIZE", 1 << 20))
+        .build();
+  }
+}
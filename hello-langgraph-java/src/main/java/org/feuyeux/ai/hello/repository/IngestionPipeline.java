@@ -0,0 +1,366 @@
+package org.feuyeux.ai.hello.repository;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentByParagraphSplitter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.repository.source.DocumentSource;
+
+/**
+ * Staged ingestion: sources are loaded and split in parallel, segments are embedded in batches
+ * with {@code embedAll} and written with {@code addAll}. Bounded queues between the stages make
+ * fast loaders wait for the embedding model instead of piling segments up in memory.
+ *
+ * <p>An {@link IngestionManifest} makes runs incremental: segments whose content hash is already
+ * recorded for their source are skipped, and recorded segments that no longer exist are removed.
+ *
+ * <p>A stage that dies, rather than failing a single batch, stops the whole run: the other stages
+ * see it at their next queue operation, and {@link #ingest} throws once they have wound down.
+ */
+@Slf4j
+public class IngestionPipeline {
+  private static final PendingSegment END_OF_SEGMENTS =
+      PendingSegment.of(null, null, null, TextSegment.from("<end of segments>"));
+  private static final List<PendingSegment> END_OF_BATCHES = List.of();
+  private static final long POLL_MILLIS = 100;
+
+  private final EmbeddingModel embeddingModel;
+  private final EmbeddingStore<TextSegment> embeddingStore;
+  private final IngestionOptions options;
+
+  public IngestionPipeline(
+      EmbeddingModel embeddingModel,
+      EmbeddingStore<TextSegment> embeddingStore,
+      IngestionOptions options) {
+    this.embeddingModel = embeddingModel;
+    this.embeddingStore = embeddingStore;
+    this.options = options;
+  }
+
+  public IngestionReport ingest(List<DocumentSource> sources) throws InterruptedException {
+    return ingest(sources, IngestionManifest.inMemory());
+  }
+
+  public IngestionReport ingest(List<DocumentSource> sources, IngestionManifest manifest)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    BlockingQueue<PendingSegment> segments = new ArrayBlockingQueue<>(options.getQueueCapacity());
+    BlockingQueue<List<PendingSegment>> batches =
+        new ArrayBlockingQueue<>(Math.max(1, options.getQueueCapacity() / options.getBatchSize()));
+    AtomicInteger stored = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    AtomicInteger skipped = new AtomicInteger();
+    AtomicInteger removed = new AtomicInteger();
+    removed.addAndGet(removeSources(manifest, sources));
+
+    Abort abort = new Abort();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Semaphore loadPermits = new Semaphore(options.getLoadParallelism());
+      List<Future<?>> loaders = new ArrayList<>();
+      for (DocumentSource source : sources) {
+        loaders.add(
+            stage(
+                executor,
+                abort,
+                () -> {
+                  loadPermits.acquire();
+                  try {
+                    loadAndSplit(source, manifest, segments, skipped, removed, abort);
+                  } finally {
+                    loadPermits.release();
+                  }
+                  return null;
+                }));
+      }
+      List<Future<?>> embedders = new ArrayList<>();
+      for (int i = 0; i < options.getEmbedParallelism(); i++) {
+        embedders.add(
+            stage(
+                executor,
+                abort,
+                () -> {
+                  embed(segments, batches, failed, abort);
+                  return null;
+                }));
+      }
+      Future<?> writer =
+          stage(
+              executor,
+              abort,
+              () -> {
+                store(batches, manifest, stored, failed, abort);
+                return null;
+              });
+
+      try {
+        awaitAll(loaders, abort);
+        abort.put(segments, END_OF_SEGMENTS);
+        awaitAll(embedders, abort);
+        abort.put(batches, END_OF_BATCHES);
+        awaitAll(List.of(writer), abort);
+      } catch (CancellationException e) {
+        // Interrupt calls still in flight; what was stored so far stays recorded.
+        executor.shutdownNow();
+      }
+    }
+    manifest.save();
+    if (abort.failure() != null) {
+      throw new IllegalStateException("Ingestion failed", abort.failure());
+    }
+
+    IngestionReport report =
+        IngestionReport.of(
+            sources.size(),
+            stored.get(),
+            skipped.get(),
+            removed.get(),
+            failed.get(),
+            Duration.ofNanos(System.nanoTime() - start));
+    log.info(
+        "Ingested {} segments from {} sources in {} ms ({} segments/sec, {} unchanged, {} removed,"
+            + " {} failed)",
+        report.getStoredSegments(),
+        report.getSources(),
+        report.getElapsed().toMillis(),
+        String.format("%.1f", report.segmentsPerSecond()),
+        report.getSkippedSegments(),
+        report.getRemovedSegments(),
+        report.getFailedSegments());
+    return report;
+  }
+
+  private void loadAndSplit(
+      DocumentSource source,
+      IngestionManifest manifest,
+      BlockingQueue<PendingSegment> segments,
+      AtomicInteger skipped,
+      AtomicInteger removed,
+      Abort abort)
+      throws InterruptedException {
+    String id = source.id();
+    Map<String, String> known = manifest.segments(id);
+    Set<String> current = new HashSet<>();
+    AtomicInteger total = new AtomicInteger();
+    AtomicInteger changed = new AtomicInteger();
+    DocumentSplitter splitter =
+        new DocumentByParagraphSplitter(options.getMaxSegmentSize(), options.getMaxOverlapSize());
+    try {
+      // Segments go downstream while the source is still being read.
+      source.read(
+          document -> {
+            for (TextSegment segment : splitter.split(document)) {
+              total.incrementAndGet();
+              String hash = IngestionManifest.contentHash(segment.text());
+              if (!current.add(hash)) {
+                continue;
+              }
+              if (known.containsKey(hash)) {
+                skipped.incrementAndGet();
+              } else {
+                changed.incrementAndGet();
+                abort.put(
+                    segments,
+                    PendingSegment.of(id, hash, IngestionManifest.embeddingId(id, hash), segment));
+              }
+            }
+          });
+    } catch (InterruptedException | CancellationException e) {
+      throw e;
+    } catch (Exception e) {
+      // Keep what the store already has for this source.
+      log.error("Error loading document from {}: {}", id, e.getMessage());
+      return;
+    }
+
+    List<String> gone = known.keySet().stream().filter(h -> !current.contains(h)).toList();
+    if (!gone.isEmpty()) {
+      embeddingStore.removeAll(gone.stream().map(known::get).toList());
+      manifest.remove(id, gone);
+      removed.addAndGet(gone.size());
+    }
+    log.info(
+        "source:{} segments:{} changed:{} removed:{}",
+        id,
+        total.get(),
+        changed.get(),
+        gone.size());
+  }
+
+  /** Removes everything recorded for sources that are no longer ingested. */
+  private int removeSources(IngestionManifest manifest, List<DocumentSource> sources) {
+    Set<String> ids = new HashSet<>();
+    sources.forEach(source -> ids.add(source.id()));
+    int removed = 0;
+    for (String source : manifest.sources()) {
+      Map<String, String> known = manifest.segments(source);
+      if (!ids.contains(source) && !known.isEmpty()) {
+        embeddingStore.removeAll(known.values());
+        manifest.remove(source, List.copyOf(known.keySet()));
+        removed += known.size();
+        log.info("source:{} no longer ingested, removed {} segments", source, known.size());
+      }
+    }
+    return removed;
+  }
+
+  private void embed(
+      BlockingQueue<PendingSegment> segments,
+      BlockingQueue<List<PendingSegment>> batches,
+      AtomicInteger failed,
+      Abort abort)
+      throws InterruptedException {
+    boolean done = false;
+    while (!done) {
+      List<PendingSegment> batch = new ArrayList<>(options.getBatchSize());
+      batch.add(abort.take(segments));
+      segments.drainTo(batch, options.getBatchSize() - 1);
+      if (batch.removeIf(segment -> segment == END_OF_SEGMENTS)) {
+        // Hand the marker on so the other embedders stop as well.
+        abort.put(segments, END_OF_SEGMENTS);
+        done = true;
+      }
+      if (batch.isEmpty()) {
+        continue;
+      }
+      List<Embedding> embeddings;
+      try {
+        embeddings =
+            embeddingModel
+                .embedAll(batch.stream().map(PendingSegment::getSegment).toList())
+                .content();
+      } catch (RuntimeException e) {
+        log.error("Error embedding {} segments: {}", batch.size(), e.getMessage());
+        failed.addAndGet(batch.size());
+        continue;
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        batch.get(i).setEmbedding(embeddings.get(i));
+      }
+      abort.put(batches, batch);
+    }
+  }
+
+  private void store(
+      BlockingQueue<List<PendingSegment>> batches,
+      IngestionManifest manifest,
+      AtomicInteger stored,
+      AtomicInteger failed,
+      Abort abort)
+      throws InterruptedException {
+    for (List<PendingSegment> batch = abort.take(batches);
+        batch != END_OF_BATCHES;
+        batch = abort.take(batches)) {
+      try {
+        List<String> ids = batch.stream().map(PendingSegment::getId).toList();
+        // Upsert: drop leftovers of an earlier run whose manifest was lost.
+        embeddingStore.removeAll(ids);
+        embeddingStore.addAll(
+            ids,
+            batch.stream().map(PendingSegment::getEmbedding).toList(),
+            batch.stream().map(PendingSegment::getSegment).toList());
+        batch.forEach(s -> manifest.put(s.getSource(), s.getHash(), s.getId()));
+        stored.addAndGet(batch.size());
+      } catch (RuntimeException e) {
+        log.error("Error storing {} segments: {}", batch.size(), e.getMessage());
+        failed.addAndGet(batch.size());
+      }
+    }
+  }
+
+  /** Runs a stage whose escaping failure stops the others. */
+  private static Future<?> stage(ExecutorService executor, Abort abort, Callable<?> work) {
+    return executor.submit(
+        () -> {
+          try {
+            return work.call();
+          } catch (CancellationException e) {
+            throw e;
+          } catch (Exception | Error e) {
+            abort.fail(e);
+            throw e;
+          }
+        });
+  }
+
+  private static void awaitAll(List<Future<?>> futures, Abort abort) throws InterruptedException {
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        // Recorded by the stage itself.
+      }
+    }
+    abort.check();
+  }
+
+  /**
+   * First failure of any stage. Queue operations wait in short slices and give up once it is set,
+   * so a stage never blocks forever on a queue whose other end has died.
+   */
+  private static final class Abort {
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    void fail(Throwable t) {
+      if (failure.compareAndSet(null, t)) {
+        log.error("Ingestion stage failed, stopping the others: {}", t.toString());
+      }
+    }
+
+    Throwable failure() {
+      return failure.get();
+    }
+
+    void check() {
+      if (failure.get() != null) {
+        throw new CancellationException("Another ingestion stage failed");
+      }
+    }
+
+    <T> void put(BlockingQueue<T> queue, T item) throws InterruptedException {
+      while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        check();
+      }
+    }
+
+    <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+      T item;
+      while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+        check();
+      }
+      return item;
+    }
+  }
+
+  @Data
+  @RequiredArgsConstructor(staticName = "of")
+  static class PendingSegment {
+    final String source;
+    final String hash;
+    final String id;
+    final TextSegment segment;
+    Embedding embedding;
+  }
+}
@@ -0,0 +1,20 @@
+package org.feuyeux.ai.hello.repository;
+
+import java.time.Duration;
+import lombok.Value;
+
+/** Outcome of one {@link IngestionPipeline#ingest} run. */
+@Value(staticConstructor = "of")
+public class IngestionReport {
+  int sources;
+  int storedSegments;
+  int skippedSegments;
+  int removedSegments;
+  int failedSegments;
+  Duration elapsed;
+
+  public double segmentsPerSecond() {
+    long millis = Math.max(1, elapsed.toMillis());
+    return storedSegments * 1000.0 / millis;
+  }
+}
@@ -0,0 +1,70 @@
+package org.feuyeux.ai.hello.repository;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maximal marginal relevance re-selection: greedily picks the candidate that is most similar to
+ * the query while least similar to the candidates picked so far.
+ */
+public final class MaximalMarginalRelevance {
+
+  private MaximalMarginalRelevance() {}
+
+  /**
+   * Selects up to {@code maxResults} diverse, relevant matches out of {@code candidates}.
+   *
+   * @param queryEmbedding embedding of the search query
+   * @param candidates matches carrying their embeddings, typically ranked by relevance
+   * @param maxResults number of matches to select
+   * @param lambda 1.0 ranks purely by relevance, 0.0 purely by diversity
+   * @return the selected matches, in selection order; the leading candidates if any of them has
+   *     no embedding
+   */
+  public static <T> List<EmbeddingMatch<T>> select(
+      Embedding queryEmbedding, List<EmbeddingMatch<T>> candidates, int maxResults, double lambda) {
+    if (candidates.size() <= 1 || candidates.stream().anyMatch(m -> m.embedding() == null)) {
+      return candidates.subList(0, Math.min(maxResults, candidates.size()));
+    }
+    int n = candidates.size();
+    double[] relevance = new double[n];
+    // Highest similarity of each candidate to any already selected one.
+    double[] redundancy = new double[n];
+    boolean[] selected = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      relevance[i] = CosineSimilarity.between(queryEmbedding, candidates.get(i).embedding());
+      redundancy[i] = Double.NEGATIVE_INFINITY;
+    }
+
+    List<EmbeddingMatch<T>> result = new ArrayList<>(Math.min(maxResults, n));
+    while (result.size() < maxResults && result.size() < n) {
+      int best = -1;
+      double bestScore = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < n; i++) {
+        if (selected[i]) {
+          continue;
+        }
+        double penalty = result.isEmpty() ? 0.0 : redundancy[i];
+        double score = lambda * relevance[i] - (1 - lambda) * penalty;
+        if (score > bestScore) {
+          bestScore = score;
+          best = i;
+        }
+      }
+      selected[best] = true;
+      EmbeddingMatch<T> picked = candidates.get(best);
+      result.add(picked);
+      for (int i = 0; i < n; i++) {
+        if (!selected[i]) {
+          double similarity =
+              CosineSimilarity.between(picked.embedding(), candidates.get(i).embedding());
+          redundancy[i] = Math.max(redundancy[i], similarity);
+        }
+      }
+    }
+    return result;
+  }
+}
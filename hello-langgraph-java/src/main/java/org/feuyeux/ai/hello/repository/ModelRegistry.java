@@ -0,0 +1,178 @@
+package org.feuyeux.ai.hello.repository;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.service.AiServices;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+import org.feuyeux.ai.hello.util.BalancerOptions;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.feuyeux.ai.hello.util.EndpointBalancer;
+import org.feuyeux.ai.hello.util.LimiterOptions;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shared registry of chat models and AI service proxies.
+ *
+ * <p>Ollama chat models and the proxies created by {@link AiServices} are thread-safe, so each
+ * distinct {@link ChatModelKey} is built once and reused by every node function instead of
+ * creating a new HTTP client and reflection proxy per LLM call.
+ *
+ * <p>Node functions make their calls through {@link #call} with a comma-separated list of Ollama
+ * servers: an {@link EndpointBalancer} picks the server and calls to one server share its {@link
+ * AdaptiveLimiter}, in the lane matching their cost.
+ */
+@Slf4j
+@Component
+public class ModelRegistry {
+  private final ConcurrentMap<ChatModelKey, ChatModel> chatModels = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ChatModelKey, StreamingChatModel> streamingChatModels =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<ServiceKey, Object> services = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, EmbeddingModel> embeddingModels = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+  private final LimiterOptions limiterOptions = LimiterOptions.fromEnv();
+  private final ConcurrentMap<String, EndpointBalancer> balancers = new ConcurrentHashMap<>();
+  private final BalancerOptions balancerOptions = BalancerOptions.fromEnv();
+  private final Map<ModelRole, ChatModelKey> roleModels = ModelRole.fromEnv();
+
+  public ChatModel chatModel(String baseUrl) {
+    return chatModel(ChatModelKey.of(baseUrl));
+  }
+
+  public ChatModel chatModel(ChatModelKey key) {
+    return chatModels.computeIfAbsent(
+        key,
+        k -> {
+          log.info(
+              "Building chat model {} at {}, num_predict {}, num_ctx {}",
+              k.getModelName(),
+              k.getBaseUrl(),
+              k.getNumPredict(),
+              k.getNumCtx());
+          return ChatModelBuilder.buildChatModel(k);
+        });
+  }
+
+  public StreamingChatModel streamingChatModel(String baseUrl) {
+    return streamingChatModel(ChatModelKey.of(baseUrl));
+  }
+
+  public StreamingChatModel streamingChatModel(ChatModelKey key) {
+    return streamingChatModels.computeIfAbsent(
+        key,
+        k -> {
+          log.info("Building streaming chat model {} at {}", k.getModelName(), k.getBaseUrl());
+          return ChatModelBuilder.buildStreamingChatModel(k);
+        });
+  }
+
+  public <S> S service(Class<S> type, String baseUrl) {
+    return service(type, ChatModelKey.of(baseUrl));
+  }
+
+  public <S> S service(Class<S> type, ChatModelKey key) {
+    Object service =
+        services.computeIfAbsent(
+            ServiceKey.of(type, key), k -> AiServices.create(type, chatModel(key)));
+    return type.cast(service);
+  }
+
+  /** The model configured for {@code role}, at {@code baseUrl}. */
+  public ChatModelKey chatModelKey(ModelRole role, String baseUrl) {
+    return roleModels.get(role).at(baseUrl);
+  }
+
+  public EmbeddingModel embeddingModel(String baseUrl) {
+    return embeddingModels.computeIfAbsent(
+        baseUrl,
+        url -> {
+          log.info("Building embedding model at {}", url);
+          return EmbeddingModelBuilder.buildEmbeddingModel(url);
+        });
+  }
+
+  /** The balancer over the comma-separated servers of {@code baseUrls}. */
+  public EndpointBalancer balancer(String baseUrls) {
+    return balancers.computeIfAbsent(
+        baseUrls, urls -> new EndpointBalancer(EndpointBalancer.parse(urls), balancerOptions));
+  }
+
+  /** The concurrency limiter shared by all calls to the server at {@code baseUrl}. */
+  public AdaptiveLimiter limiter(String baseUrl) {
+    return limiters.computeIfAbsent(baseUrl, url -> new AdaptiveLimiter(limiterOptions));
+  }
+
+  /**
+   * Makes a call to one of {@code baseUrls}, in {@code lane} of its limiter and under the current
+   * deadline. Calls other than generations are retried on another server when theirs fails; a
+   * failed generation may have run for long, and the graph budget decides whether to try again.
+   */
+  public <T> T call(String baseUrls, AdaptiveLimiter.Lane lane, Function<String, T> work) {
+    return call(baseUrls, lane, lane.name(), work);
+  }
+
+  private <T> T call(
+      String baseUrls, AdaptiveLimiter.Lane lane, String callClass, Function<String, T> work) {
+    return balancer(baseUrls)
+        .call(
+            lane != AdaptiveLimiter.Lane.GENERATION,
+            url -> limiter(url).call(lane, callClass, () -> Deadline.call(() -> work.apply(url))));
+  }
+
+  /**
+   * Like {@link #call(String, AdaptiveLimiter.Lane, Function)} with the AI service backed by the
+   * model of {@code role} on the chosen server, in the lane of the role.
+   */
+  public <S, T> T call(Class<S> type, String baseUrls, ModelRole role, Function<S, T> work) {
+    return call(type, baseUrls, role, 1, work);
+  }
+
+  /**
+   * Like {@link #call(Class, String, ModelRole, Function)} for a call handling {@code items}
+   * questions or documents at once. Its latency is compared with calls of the same role, service
+   * and batch size, rounded up to a power of two.
+   */
+  public <S, T> T call(
+      Class<S> type, String baseUrls, ModelRole role, int items, Function<S, T> work) {
+    String callClass = role.name() + "/" + type.getSimpleName();
+    if (items > 1) {
+      callClass += "x" + Integer.highestOneBit(items - 1) * 2;
+    }
+    return call(
+        baseUrls,
+        role.lane(),
+        callClass,
+        url -> work.apply(service(type, chatModelKey(role, url))));
+  }
+
+  public Map<String, AdaptiveLimiter.Stats> limiterStats() {
+    Map<String, AdaptiveLimiter.Stats> stats = new TreeMap<>();
+    limiters.forEach((url, limiter) -> stats.put(url, limiter.stats()));
+    return stats;
+  }
+
+  public Map<String, List<EndpointBalancer.EndpointStats>> balancerStats() {
+    Map<String, List<EndpointBalancer.EndpointStats>> stats = new TreeMap<>();
+    balancers.forEach((urls, balancer) -> stats.put(urls, balancer.stats()));
+    return stats;
+  }
+
+  public int size() {
+    return chatModels.size() + streamingChatModels.size() + services.size();
+  }
+
+  @Value(staticConstructor = "of")
+  static class ServiceKey {
+    Class<?> type;
+    ChatModelKey model;
+  }
+}
@@ -0,0 +1,65 @@
+package org.feuyeux.ai.hello.repository;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+import org.feuyeux.ai.hello.util.DotEnvConfig;
+
+/**
+ * What a chat model call is for. Each role has its own model, so the short yes/no graders and the
+ * router can run a smaller and faster model than answer generation. {@code <ROLE>_MODEL}, {@code
+ * <ROLE>_NUM_PREDICT}, {@code <ROLE>_NUM_CTX} and {@code <ROLE>_TIMEOUT_SECONDS} override {@code
+ * OLLAMA_MODEL}, the role's output token cap, {@code OLLAMA_NUM_CTX} and {@code
+ * MODEL_TIMEOUT_SECONDS}; a cap or context size of 0 leaves the server default.
+ */
+public enum ModelRole {
+  // Output caps leave room for the batched variants: 32 routes, 8 relevance scores.
+  ROUTER(AdaptiveLimiter.Lane.GRADING, 512),
+  RETRIEVAL_GRADER(AdaptiveLimiter.Lane.GRADING, 256),
+  /** Also grades hallucination and answer in one call when grading is fused. */
+  HALLUCINATION_GRADER(AdaptiveLimiter.Lane.GRADING, 128),
+  ANSWER_GRADER(AdaptiveLimiter.Lane.GRADING, 128),
+  REWRITER(AdaptiveLimiter.Lane.GRADING, 256),
+  GENERATOR(AdaptiveLimiter.Lane.GENERATION, 0);
+
+  private final AdaptiveLimiter.Lane lane;
+  private final int defaultNumPredict;
+
+  ModelRole(AdaptiveLimiter.Lane lane, int defaultNumPredict) {
+    this.lane = lane;
+    this.defaultNumPredict = defaultNumPredict;
+  }
+
+  /** Lane of the role's calls in a server's {@link AdaptiveLimiter}. */
+  public AdaptiveLimiter.Lane lane() {
+    return lane;
+  }
+
+  /** Model settings of every role, without a base URL. */
+  public static Map<ModelRole, ChatModelKey> fromEnv() {
+    String model = DotEnvConfig.valueOf("OLLAMA_MODEL").orElse(ChatModelKey.DEFAULT_MODEL);
+    int numCtx = DotEnvConfig.intValueOf("OLLAMA_NUM_CTX", 0);
+    int timeoutSeconds = (int) ChatModelKey.modelTimeout().toSeconds();
+    Map<ModelRole, ChatModelKey> models = new EnumMap<>(ModelRole.class);
+    for (ModelRole role : values()) {
+      String prefix = role.name() + "_";
+      int seconds = DotEnvConfig.intValueOf(prefix + "TIMEOUT_SECONDS", timeoutSeconds);
+      int numPredict = DotEnvConfig.intValueOf(prefix + "NUM_PREDICT", role.defaultNumPredict);
+      models.put(
+          role,
+          ChatModelKey.of(
+              null,
+              DotEnvConfig.valueOf(prefix + "MODEL").map(String::trim).orElse(model),
+              0.0,
+              Duration.ofSeconds(seconds),
+              positive(numPredict),
+              positive(DotEnvConfig.intValueOf(prefix + "NUM_CTX", numCtx))));
+    }
+    return models;
+  }
+
+  private static Integer positive(int value) {
+    return value > 0 ? value : null;
+  }
+}
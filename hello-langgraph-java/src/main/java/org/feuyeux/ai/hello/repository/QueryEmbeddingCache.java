@@ -0,0 +1,73 @@
+package org.feuyeux.ai.hello.repository;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.booleanValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.LruCache;
+import org.feuyeux.ai.hello.util.Queries;
+
+/**
+ * Query embeddings keyed by the normalized query text, so a repeated or rewritten-back question
+ * does not go to the embedding model again. The model embeds the query as given, since case can
+ * matter to it; variants differing only in case or whitespace share the first one's embedding.
+ * Vectors are kept on-heap, or in direct buffers when {@code offHeap} is set, and copied out on
+ * every hit.
+ */
+@Slf4j
+public class QueryEmbeddingCache {
+  private final EmbeddingModel embeddingModel;
+  private final LruCache<String, FloatBuffer> cache;
+  private final boolean offHeap;
+
+  public QueryEmbeddingCache(
+      EmbeddingModel embeddingModel, int maxEntries, Duration ttl, boolean offHeap) {
+    this.embeddingModel = embeddingModel;
+    this.cache = new LruCache<>(maxEntries, ttl);
+    this.offHeap = offHeap;
+  }
+
+  public static QueryEmbeddingCache fromEnv(EmbeddingModel embeddingModel) {
+    return new QueryEmbeddingCache(
+        embeddingModel,
+        intValueOf("EMBEDDING_CACHE_SIZE", 1024),
+        Duration.ofSeconds(intValueOf("EMBEDDING_CACHE_TTL_SECONDS", 3600)),
+        booleanValueOf("EMBEDDING_CACHE_OFF_HEAP", false));
+  }
+
+  public Embedding embed(String query) {
+    String key = Queries.normalize(query);
+    FloatBuffer vector =
+        cache.computeIfAbsent(key, k -> store(embeddingModel.embed(query).content()));
+    float[] copy = new float[vector.capacity()];
+    vector.get(0, copy);
+    return Embedding.from(copy);
+  }
+
+  public LruCache.Stats stats() {
+    return cache.stats();
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  private FloatBuffer store(Embedding embedding) {
+    float[] vector = embedding.vector();
+    if (!offHeap) {
+      return FloatBuffer.wrap(vector);
+    }
+    FloatBuffer buffer =
+        ByteBuffer.allocateDirect(vector.length * Float.BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    buffer.put(0, vector);
+    return buffer;
+  }
+}
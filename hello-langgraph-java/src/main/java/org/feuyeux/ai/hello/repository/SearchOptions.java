@@ -0,0 +1,42 @@
+package org.feuyeux.ai.hello.repository;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.booleanValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.doubleValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** How {@link HelloEmbeddingStore#search(String, SearchOptions)} selects segments. */
+@Value
+@Builder
+public class SearchOptions {
+  /** Number of segments returned (top-K). */
+  @Builder.Default int maxResults = 4;
+
+  /** Segments scoring below this relevance are dropped. */
+  @Builder.Default double minScore = 0.0;
+
+  /** Re-select candidates with maximal marginal relevance to avoid near-duplicate segments. */
+  @Builder.Default boolean mmr = true;
+
+  /** MMR trade-off: 1.0 ranks purely by relevance, 0.0 purely by diversity. */
+  @Builder.Default double mmrLambda = 0.5;
+
+  /** MMR picks {@code maxResults} out of {@code maxResults * mmrFetchFactor} candidates. */
+  @Builder.Default int mmrFetchFactor = 4;
+
+  public static SearchOptions fromEnv() {
+    return SearchOptions.builder()
+        .maxResults(intValueOf("SEARCH_MAX_RESULTS", 4))
+        .minScore(doubleValueOf("SEARCH_MIN_SCORE", 0.0))
+        .mmr(booleanValueOf("SEARCH_MMR", true))
+        .mmrLambda(doubleValueOf("SEARCH_MMR_LAMBDA", 0.5))
+        .mmrFetchFactor(intValueOf("SEARCH_MMR_FETCH_FACTOR", 4))
+        .build();
+  }
+
+  int fetchSize() {
+    return mmr ? maxResults * Math.max(1, mmrFetchFactor) : maxResults;
+  }
+}
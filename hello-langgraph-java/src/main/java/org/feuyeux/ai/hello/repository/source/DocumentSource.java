@@ -0,0 +1,21 @@
+package org.feuyeux.ai.hello.repository.source;
+
+import dev.langchain4j.data.document.Document;
+
+/**
+ * Where the {@link org.feuyeux.ai.hello.repository.IngestionPipeline} gets its text from. A source
+ * may hand its content over as several documents so that large inputs never sit in memory whole.
+ */
+public interface DocumentSource {
+
+  /** Stable identifier, used as the source key of the ingestion manifest. */
+  String id();
+
+  /** Passes the content of this source to {@code sink}, in order. */
+  void read(Sink sink) throws Exception;
+
+  @FunctionalInterface
+  interface Sink {
+    void accept(Document document) throws InterruptedException;
+  }
+}
@@ -0,0 +1,96 @@
+package org.feuyeux.ai.hello.repository.source;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import lombok.Value;
+
+/**
+ * A UTF-8 text file on the local filesystem. The file is read through a fixed-size buffer and
+ * handed over as documents of about {@code chunkSize} characters, cut at paragraph breaks, so the
+ * heap needed does not depend on the file size.
+ */
+@Value(staticConstructor = "of")
+public class FileDocumentSource implements DocumentSource {
+  private static final String PARAGRAPH_BREAK = "\n\n";
+
+  Path path;
+  int chunkSize;
+
+  /**
+   * Finds all regular files below {@code root} whose path relative to {@code root} matches {@code
+   * glob}, e.g. {@code **} for everything or {@code **.{txt,md}} for text and markdown files.
+   */
+  public static List<DocumentSource> scan(Path root, String glob, int chunkSize)
+      throws IOException {
+    PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+    try (Stream<Path> files = Files.walk(root)) {
+      return files
+          .filter(Files::isRegularFile)
+          .filter(file -> matcher.matches(root.relativize(file)))
+          .sorted()
+          .<DocumentSource>map(file -> of(file, chunkSize))
+          .toList();
+    }
+  }
+
+  @Override
+  public String id() {
+    return path.toAbsolutePath().normalize().toUri().toString();
+  }
+
+  @Override
+  public void read(Sink sink) throws IOException, InterruptedException {
+    CharsetDecoder decoder =
+        UTF_8
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    ByteBuffer bytes = ByteBuffer.allocate(chunkSize);
+    CharBuffer chars = CharBuffer.allocate(chunkSize);
+    StringBuilder pending = new StringBuilder();
+    int chunk = 0;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      boolean endOfInput = false;
+      while (!endOfInput) {
+        endOfInput = channel.read(bytes) < 0;
+        bytes.flip();
+        decoder.decode(bytes, chars, endOfInput);
+        if (endOfInput) {
+          decoder.flush(chars);
+        }
+        // Keep an incomplete multi-byte sequence for the next read.
+        bytes.compact();
+        pending.append(chars.flip());
+        chars.clear();
+
+        while (pending.length() >= chunkSize || (endOfInput && !pending.isEmpty())) {
+          int cut = pending.lastIndexOf(PARAGRAPH_BREAK, chunkSize);
+          if (cut <= 0 || (endOfInput && pending.length() <= chunkSize)) {
+            cut = Math.min(pending.length(), chunkSize);
+          }
+          String text = pending.substring(0, cut);
+          pending.delete(0, cut);
+          if (!text.isBlank()) {
+            Metadata metadata = Metadata.from(Map.of("url", id(), "chunk", chunk++));
+            sink.accept(Document.from(text, metadata));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package org.feuyeux.ai.hello.repository.source;
+
+import dev.langchain4j.data.document.loader.UrlDocumentLoader;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import lombok.Value;
+
+/** A web page, loaded in one piece with {@link UrlDocumentLoader}. */
+@Value(staticConstructor = "of")
+public class UrlDocumentSource implements DocumentSource {
+  String url;
+
+  @Override
+  public String id() {
+    return url;
+  }
+
+  @Override
+  public void read(Sink sink) throws InterruptedException {
+    sink.accept(UrlDocumentLoader.load(url, new TextDocumentParser()));
+  }
+}
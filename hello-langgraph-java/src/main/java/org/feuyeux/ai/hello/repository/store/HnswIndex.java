@@ -0,0 +1,313 @@
+package org.feuyeux.ai.hello.repository.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+import lombok.Value;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) for approximate nearest-neighbour
+ * search over vectors identified by int node ids. The vectors stay with the caller and are reached
+ * through {@link Vectors}. Inserts may run concurrently with each other and with searches.
+ */
+public final class HnswIndex {
+  private static final int PAGE_BITS = 12;
+  private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+  private static final int MAX_PAGES = 1 << 16;
+  private static final int MAX_LEVEL = 16;
+  private static final Comparator<Neighbour> BY_SCORE = Comparator.comparingDouble(n -> n.score);
+
+  /** Vector access for the index; a larger similarity means closer. */
+  public interface Vectors {
+    float[] vector(int node);
+
+    double similarity(float[] query, int node);
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Neighbour {
+    int node;
+    double score;
+  }
+
+  private record EntryPoint(int node, int level) {}
+
+  private final Vectors vectors;
+  private final int m;
+  private final int efConstruction;
+  private final int efSearch;
+  private final double levelMultiplier;
+  private final AtomicReferenceArray<AtomicReferenceArray<Node>> pages =
+      new AtomicReferenceArray<>(MAX_PAGES);
+  private final AtomicInteger size = new AtomicInteger();
+  private volatile EntryPoint entryPoint;
+
+  public HnswIndex(Vectors vectors, HnswOptions options) {
+    this.vectors = vectors;
+    this.m = options.getM();
+    this.efConstruction = options.getEfConstruction();
+    this.efSearch = options.getEfSearch();
+    this.levelMultiplier = 1 / Math.log(Math.max(2, m));
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  /** Inserts {@code nodes} from {@code parallelism} threads. */
+  public void insertAll(int[] nodes, int parallelism) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    AtomicInteger next = new AtomicInteger();
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int i = 0; i < Math.max(1, parallelism); i++) {
+        workers.add(
+            executor.submit(
+                () -> {
+                  int n;
+                  while ((n = next.getAndIncrement()) < nodes.length) {
+                    insert(nodes[n]);
+                  }
+                }));
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Building the index failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void insert(int node) {
+    float[] vector = vectors.vector(node);
+    int level = randomLevel();
+    Node created = new Node(level, m);
+    if (!page(node, true).compareAndSet(node & PAGE_MASK, null, created)) {
+      throw new IllegalArgumentException("node " + node + " is already indexed");
+    }
+    size.incrementAndGet();
+    EntryPoint entry = entryPoint;
+    if (entry == null) {
+      synchronized (this) {
+        if (entryPoint == null) {
+          entryPoint = new EntryPoint(node, level);
+          return;
+        }
+        entry = entryPoint;
+      }
+    }
+
+    Neighbour current = Neighbour.of(entry.node(), vectors.similarity(vector, entry.node()));
+    for (int layer = entry.level(); layer > level; layer--) {
+      current = greedy(vector, current, layer);
+    }
+    List<Neighbour> entries = List.of(current);
+    for (int layer = Math.min(level, entry.level()); layer >= 0; layer--) {
+      List<Neighbour> candidates = searchLayer(vector, entries, efConstruction, layer);
+      int[] selected = select(candidates, m, node);
+      created.set(layer, selected);
+      for (int neighbour : selected) {
+        link(neighbour, node, layer);
+      }
+      entries = candidates;
+    }
+    if (level > entry.level()) {
+      synchronized (this) {
+        if (level > entryPoint.level()) {
+          entryPoint = new EntryPoint(node, level);
+        }
+      }
+    }
+  }
+
+  public List<Neighbour> search(float[] query, int k) {
+    return search(query, k, efSearch, node -> true);
+  }
+
+  /**
+   * Returns up to {@code k} accepted nodes closest to {@code query}, best first. Only the {@code
+   * max(ef, k)} nearest candidates are considered, so a selective {@code accept} may return fewer.
+   */
+  public List<Neighbour> search(float[] query, int k, int ef, IntPredicate accept) {
+    EntryPoint entry = entryPoint;
+    if (entry == null) {
+      return List.of();
+    }
+    Neighbour current = Neighbour.of(entry.node(), vectors.similarity(query, entry.node()));
+    for (int layer = entry.level(); layer > 0; layer--) {
+      current = greedy(query, current, layer);
+    }
+    return searchLayer(query, List.of(current), Math.max(ef, k), 0).stream()
+        .filter(neighbour -> accept.test(neighbour.node))
+        .limit(k)
+        .toList();
+  }
+
+  private Neighbour greedy(float[] query, Neighbour start, int layer) {
+    Neighbour current = start;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int neighbour : node(current.node).neighbours(layer)) {
+        double score = vectors.similarity(query, neighbour);
+        if (score > current.score) {
+          current = Neighbour.of(neighbour, score);
+          changed = true;
+        }
+      }
+    }
+    return current;
+  }
+
+  /** Best-first search of one layer; returns the {@code ef} closest nodes found, best first. */
+  private List<Neighbour> searchLayer(float[] query, List<Neighbour> entries, int ef, int layer) {
+    BitSet visited = new BitSet();
+    PriorityQueue<Neighbour> candidates = new PriorityQueue<>(BY_SCORE.reversed());
+    PriorityQueue<Neighbour> results = new PriorityQueue<>(BY_SCORE);
+    for (Neighbour entry : entries) {
+      visited.set(entry.node);
+      candidates.add(entry);
+      results.add(entry);
+    }
+    while (results.size() > ef) {
+      results.poll();
+    }
+    while (!candidates.isEmpty()) {
+      Neighbour candidate = candidates.poll();
+      if (results.size() >= ef && candidate.score < results.peek().score) {
+        break;
+      }
+      for (int neighbour : node(candidate.node).neighbours(layer)) {
+        if (visited.get(neighbour)) {
+          continue;
+        }
+        visited.set(neighbour);
+        double score = vectors.similarity(query, neighbour);
+        if (results.size() < ef || score > results.peek().score) {
+          Neighbour next = Neighbour.of(neighbour, score);
+          candidates.add(next);
+          results.add(next);
+          if (results.size() > ef) {
+            results.poll();
+          }
+        }
+      }
+    }
+    List<Neighbour> sorted = new ArrayList<>(results);
+    sorted.sort(BY_SCORE.reversed());
+    return sorted;
+  }
+
+  /**
+   * Neighbour selection heuristic: keeps a candidate only if it is closer to the base node than to
+   * every candidate kept so far, which favours neighbours in different directions.
+   */
+  private int[] select(List<Neighbour> candidates, int max, int self) {
+    List<Neighbour> selected = new ArrayList<>(max);
+    for (Neighbour candidate : candidates) {
+      if (selected.size() >= max) {
+        break;
+      }
+      if (candidate.node == self) {
+        continue;
+      }
+      float[] vector = vectors.vector(candidate.node);
+      boolean diverse = true;
+      for (Neighbour kept : selected) {
+        if (vectors.similarity(vector, kept.node) > candidate.score) {
+          diverse = false;
+          break;
+        }
+      }
+      if (diverse) {
+        selected.add(candidate);
+      }
+    }
+    return selected.stream().mapToInt(Neighbour::getNode).toArray();
+  }
+
+  private void link(int target, int node, int layer) {
+    Node targetNode = node(target);
+    synchronized (targetNode) {
+      if (targetNode.add(layer, node)) {
+        return;
+      }
+      float[] vector = vectors.vector(target);
+      List<Neighbour> candidates = new ArrayList<>();
+      for (int neighbour : targetNode.neighbours(layer)) {
+        candidates.add(Neighbour.of(neighbour, vectors.similarity(vector, neighbour)));
+      }
+      candidates.add(Neighbour.of(node, vectors.similarity(vector, node)));
+      candidates.sort(BY_SCORE.reversed());
+      targetNode.set(layer, select(candidates, targetNode.capacity(layer), target));
+    }
+  }
+
+  private int randomLevel() {
+    double u = 1 - ThreadLocalRandom.current().nextDouble();
+    return Math.min(MAX_LEVEL, (int) (-Math.log(u) * levelMultiplier));
+  }
+
+  private AtomicReferenceArray<Node> page(int node, boolean create) {
+    int index = node >>> PAGE_BITS;
+    AtomicReferenceArray<Node> page = pages.get(index);
+    if (page == null && create) {
+      pages.compareAndSet(index, null, new AtomicReferenceArray<>(1 << PAGE_BITS));
+      page = pages.get(index);
+    }
+    return page;
+  }
+
+  private Node node(int node) {
+    return page(node, false).get(node & PAGE_MASK);
+  }
+
+  /** Adjacency lists of one node, one per layer it lives on. */
+  private static final class Node {
+    private final int[][] links;
+    private final int[] counts;
+
+    Node(int level, int m) {
+      links = new int[level + 1][];
+      counts = new int[level + 1];
+      for (int layer = 0; layer <= level; layer++) {
+        links[layer] = new int[layer == 0 ? 2 * m : m];
+      }
+    }
+
+    int capacity(int layer) {
+      return links[layer].length;
+    }
+
+    synchronized int[] neighbours(int layer) {
+      return Arrays.copyOf(links[layer], counts[layer]);
+    }
+
+    synchronized void set(int layer, int[] neighbours) {
+      System.arraycopy(neighbours, 0, links[layer], 0, neighbours.length);
+      counts[layer] = neighbours.length;
+    }
+
+    /** Appends {@code node} if there is room; returns whether it was added. */
+    synchronized boolean add(int layer, int node) {
+      if (counts[layer] == links[layer].length) {
+        return false;
+      }
+      links[layer][counts[layer]++] = node;
+      return true;
+    }
+  }
+}
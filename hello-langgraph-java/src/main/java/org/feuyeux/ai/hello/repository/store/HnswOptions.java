@@ -0,0 +1,33 @@
+package org.feuyeux.ai.hello.repository.store;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Tuning of the {@link HnswIndex} graph. */
+@Value
+@Builder
+public class HnswOptions {
+  /** Neighbours kept per node on the upper layers; twice as many on the bottom layer. */
+  @Builder.Default int m = 16;
+
+  /** Candidate list size while inserting; higher builds a better graph, more slowly. */
+  @Builder.Default int efConstruction = 200;
+
+  /** Candidate list size while searching; higher raises recall at the cost of latency. */
+  @Builder.Default int efSearch = 64;
+
+  /** Threads inserting at the same time when an index is built from existing vectors. */
+  @Builder.Default int buildParallelism = Runtime.getRuntime().availableProcessors();
+
+  public static HnswOptions fromEnv() {
+    return HnswOptions.builder()
+        .m(intValueOf("HNSW_M", 16))
+        .efConstruction(intValueOf("HNSW_EF_CONSTRUCTION", 200))
+        .efSearch(intValueOf("HNSW_EF_SEARCH", 64))
+        .buildParallelism(
+            intValueOf("HNSW_BUILD_PARALLELISM", Runtime.getRuntime().availableProcessors()))
+        .build();
+  }
+}
@@ -0,0 +1,717 @@
+package org.feuyeux.ai.hello.repository.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Embedded, file-backed {@link EmbeddingStore}. Vectors are kept in a memory-mapped {@link
+ * VectorFile}; ids, segments and removals are appended to a segment log that is replayed on open.
+ * Reopening therefore costs one sequential read of the log instead of re-embedding the corpus.
+ *
+ * <p>Opened with {@link HnswOptions}, unfiltered searches go through an {@link HnswIndex} that is
+ * rebuilt from the vectors on open and extended on every add; otherwise, and for searches with a
+ * metadata filter, search is an exact scan over all live vectors. Removed vectors keep their slot,
+ * and their place in the index, while the store is open; opening a store with more than {@link
+ * #COMPACT_DEAD_FRACTION} of its slots dead rewrites both files without them.
+ *
+ * <p>With {@link QuantizationOptions}, the index walk or scan compares off-heap int8 or binary
+ * codes instead of floats and the best candidates are re-ranked on the float vectors.
+ */
+@Slf4j
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+  private static final String VECTORS_FILE = "vectors.f32";
+  private static final String LOG_FILE = "segments.log";
+  private static final String TMP = ".tmp";
+  private static final String COMPACTED = ".compacted";
+  /** Share of removed or replaced slots above which {@link #open} compacts the store. */
+  static final double COMPACT_DEAD_FRACTION = 0.25;
+  private static final byte ADD = 1;
+  private static final byte REMOVE = 2;
+  private static final Comparator<HnswIndex.Neighbour> BY_SCORE =
+      Comparator.comparingDouble(HnswIndex.Neighbour::getScore);
+
+  private final Path directory;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<String, Integer> slots = new HashMap<>();
+  // Indexed by slot, null once removed.
+  private final List<Entry> entries = new ArrayList<>();
+  // Indexed by slot, kept for removed slots since they stay in the index.
+  private float[] norms = new float[0];
+  private VectorFile vectors;
+  private DataOutputStream segmentLog;
+  private final HnswOptions hnswOptions;
+  private HnswIndex index;
+  private final QuantizationOptions quantization;
+  private QuantizedVectors codes;
+
+  private MappedEmbeddingStore(
+      Path directory, HnswOptions hnswOptions, QuantizationOptions quantization) {
+    this.directory = directory;
+    this.hnswOptions = hnswOptions;
+    this.quantization = quantization;
+  }
+
+  /** Opens the store in {@code directory} for exact search only. */
+  public static MappedEmbeddingStore open(Path directory) throws IOException {
+    return open(directory, null);
+  }
+
+  public static MappedEmbeddingStore open(Path directory, HnswOptions hnswOptions)
+      throws IOException {
+    return open(directory, hnswOptions, QuantizationOptions.builder().build());
+  }
+
+  /**
+   * Opens the store in {@code directory}, creating an empty one if there is none yet. Unless {@code
+   * hnswOptions} is {@code null}, an {@link HnswIndex} is built over the stored vectors.
+   */
+  public static MappedEmbeddingStore open(
+      Path directory, HnswOptions hnswOptions, QuantizationOptions quantization)
+      throws IOException {
+    long start = System.nanoTime();
+    Files.createDirectories(directory);
+    finishCompaction(directory);
+    MappedEmbeddingStore store = new MappedEmbeddingStore(directory, hnswOptions, quantization);
+    store.vectors = VectorFile.open(directory.resolve(VECTORS_FILE));
+    store.replay(directory.resolve(LOG_FILE));
+    int dead = store.entries.size() - store.slots.size();
+    if (store.vectors != null && dead > COMPACT_DEAD_FRACTION * store.entries.size()) {
+      store.compact();
+    }
+    if (quantization.enabled()) {
+      store.encodeAll();
+    }
+    if (hnswOptions != null) {
+      store.buildIndex();
+    }
+    store.segmentLog =
+        new DataOutputStream(
+            new BufferedOutputStream(
+                Files.newOutputStream(
+                    directory.resolve(LOG_FILE),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)));
+    log.info(
+        "Opened {} with {} segments in {} ms",
+        directory,
+        store.size(),
+        (System.nanoTime() - start) / 1_000_000);
+    return store;
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return slots.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public String add(Embedding embedding) {
+    String id = UUID.randomUUID().toString();
+    add(id, embedding);
+    return id;
+  }
+
+  @Override
+  public void add(String id, Embedding embedding) {
+    addAll(List.of(id), List.of(embedding), null);
+  }
+
+  @Override
+  public String add(Embedding embedding, TextSegment textSegment) {
+    String id = UUID.randomUUID().toString();
+    addAll(List.of(id), List.of(embedding), List.of(textSegment));
+    return id;
+  }
+
+  @Override
+  public List<String> addAll(List<Embedding> embeddings) {
+    List<String> ids = embeddings.stream().map(e -> UUID.randomUUID().toString()).toList();
+    addAll(ids, embeddings, null);
+    return ids;
+  }
+
+  /** Adds or replaces the given embeddings; {@code embedded} may be {@code null}. */
+  @Override
+  public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+    if (ids.size() != embeddings.size() || (embedded != null && embedded.size() != ids.size())) {
+      throw new IllegalArgumentException("ids, embeddings and embedded must have the same size");
+    }
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < ids.size(); i++) {
+        float[] vector = embeddings.get(i).vector();
+        int slot = entries.size();
+        vectorFile(vector.length).write(slot, vector);
+        if (quantization.enabled()) {
+          codes().set(slot, unit(vector));
+        }
+        Entry entry =
+            Entry.of(ids.get(i), embedded == null ? null : embedded.get(i), norm(vector));
+        // Write the vector before the log record that refers to it.
+        writeAdd(slot, entry);
+        apply(slot, entry);
+        if (index != null) {
+          index.insert(slot);
+        }
+      }
+      segmentLog.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void removeAll(Collection<String> ids) {
+    lock.writeLock().lock();
+    try {
+      for (String id : ids) {
+        if (slots.containsKey(id)) {
+          segmentLog.writeByte(REMOVE);
+          writeString(id);
+          remove(id);
+        }
+      }
+      segmentLog.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void removeAll(Filter filter) {
+    List<String> ids = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      for (Entry entry : entries) {
+        if (entry != null && matches(filter, entry)) {
+          ids.add(entry.getId());
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    removeAll(ids);
+  }
+
+  @Override
+  public void removeAll() {
+    List<String> ids;
+    lock.readLock().lock();
+    try {
+      ids = List.copyOf(slots.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+    removeAll(ids);
+  }
+
+  @Override
+  public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+    float[] query = unit(request.queryEmbedding().vector());
+    lock.readLock().lock();
+    try {
+      int candidates =
+          codes != null
+              ? request.maxResults() * Math.max(1, quantization.getRerankFactor())
+              : request.maxResults();
+      List<HnswIndex.Neighbour> nearest =
+          index != null && request.filter() == null
+              ? index.search(
+                  query,
+                  candidates,
+                  Math.max(hnswOptions.getEfSearch(), candidates),
+                  slot -> entries.get(slot) != null)
+              : scan(query, candidates, request.filter());
+      if (codes != null) {
+        nearest = rerank(query, nearest, request.maxResults());
+      }
+      List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(nearest.size());
+      for (HnswIndex.Neighbour neighbour : nearest) {
+        double score = RelevanceScore.fromCosineSimilarity(neighbour.getScore());
+        if (score < request.minScore()) {
+          break;
+        }
+        Entry entry = entries.get(neighbour.getNode());
+        float[] vector = vectors.read(neighbour.getNode());
+        matches.add(
+            new EmbeddingMatch<>(score, entry.getId(), Embedding.from(vector), entry.getSegment()));
+      }
+      return new EmbeddingSearchResult<>(matches);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Top-K of live slots by cosine similarity to the unit vector {@code query}; exact unless codes
+   * are kept, in which case the similarity is the approximate one of the codes.
+   */
+  private List<HnswIndex.Neighbour> scan(float[] query, int maxResults, Filter filter)
+      throws IOException {
+    PriorityQueue<HnswIndex.Neighbour> top = new PriorityQueue<>(BY_SCORE);
+    QuantizedVectors.Query encoded = codes != null ? codes.encode(query) : null;
+    for (int slot = 0; slot < entries.size(); slot++) {
+      Entry entry = entries.get(slot);
+      if (entry == null || !matches(filter, entry)) {
+        continue;
+      }
+      double cosine = encoded != null ? codes.similarity(encoded, slot) : cosine(slot, query);
+      if (top.size() < maxResults || cosine > top.peek().getScore()) {
+        top.add(HnswIndex.Neighbour.of(slot, cosine));
+        if (top.size() > maxResults) {
+          top.poll();
+        }
+      }
+    }
+    List<HnswIndex.Neighbour> nearest = new ArrayList<>(top);
+    nearest.sort(BY_SCORE.reversed());
+    return nearest;
+  }
+
+  /** Replaces approximate scores with exact ones and keeps the best {@code maxResults}. */
+  private List<HnswIndex.Neighbour> rerank(
+      float[] query, List<HnswIndex.Neighbour> candidates, int maxResults) throws IOException {
+    List<HnswIndex.Neighbour> exact = new ArrayList<>(candidates.size());
+    for (HnswIndex.Neighbour candidate : candidates) {
+      exact.add(HnswIndex.Neighbour.of(candidate.getNode(), cosine(candidate.getNode(), query)));
+    }
+    exact.sort(BY_SCORE.reversed());
+    return exact.subList(0, Math.min(maxResults, exact.size()));
+  }
+
+  /** Mean of the unit vectors of all stored segments, or {@code null} when there are none. */
+  public float[] centroid() {
+    lock.readLock().lock();
+    try {
+      double[] sum = null;
+      int count = 0;
+      for (int slot = 0; slot < entries.size(); slot++) {
+        if (entries.get(slot) == null || norms[slot] == 0) {
+          continue;
+        }
+        float[] vector = vectors.read(slot);
+        if (sum == null) {
+          sum = new double[vector.length];
+        }
+        for (int i = 0; i < vector.length; i++) {
+          sum[i] += vector[i] / norms[slot];
+        }
+        count++;
+      }
+      if (sum == null) {
+        return null;
+      }
+      float[] mean = new float[sum.length];
+      for (int i = 0; i < sum.length; i++) {
+        mean[i] = (float) (sum[i] / count);
+      }
+      return mean;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Flushes the log and writes mapped vectors to disk. */
+  public void flush() throws IOException {
+    lock.writeLock().lock();
+    try {
+      segmentLog.flush();
+      if (vectors != null) {
+        vectors.force();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      segmentLog.close();
+      if (vectors != null) {
+        vectors.close();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private VectorFile vectorFile(int dimension) throws IOException {
+    if (vectors == null) {
+      vectors = VectorFile.create(directory.resolve(VECTORS_FILE), dimension);
+    }
+    if (vectors.dimension() != dimension) {
+      throw new IllegalArgumentException(
+          "expected dimension " + vectors.dimension() + " but got " + dimension);
+    }
+    return vectors;
+  }
+
+  private void apply(int slot, Entry entry) {
+    remove(entry.getId());
+    while (entries.size() <= slot) {
+      entries.add(null);
+    }
+    entries.set(slot, entry);
+    if (norms.length <= slot) {
+      norms = Arrays.copyOf(norms, Math.max(slot + 1, norms.length * 2));
+    }
+    norms[slot] = entry.getNorm();
+    slots.put(entry.getId(), slot);
+  }
+
+  private void remove(String id) {
+    Integer slot = slots.remove(id);
+    if (slot != null) {
+      entries.set(slot, null);
+    }
+  }
+
+  private void replay(Path logFile) throws IOException {
+    if (!Files.exists(logFile)) {
+      return;
+    }
+    long valid = 0;
+    try (CountingInputStream counter =
+            new CountingInputStream(new BufferedInputStream(Files.newInputStream(logFile)));
+        DataInputStream in = new DataInputStream(counter)) {
+      while (true) {
+        int op = in.read();
+        if (op < 0) {
+          break;
+        }
+        if (op == ADD) {
+          int slot = in.readInt();
+          String id = readString(in);
+          float norm = in.readFloat();
+          TextSegment segment = in.readBoolean() ? readSegment(in) : null;
+          apply(slot, Entry.of(id, segment, norm));
+        } else if (op == REMOVE) {
+          remove(readString(in));
+        } else {
+          throw new IOException("corrupt segment log " + logFile + " at " + valid);
+        }
+        valid = counter.count;
+      }
+    } catch (EOFException e) {
+      log.warn("Dropping incomplete record at the end of {}", logFile);
+    }
+    if (valid < Files.size(logFile)) {
+      try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+        channel.truncate(valid);
+      }
+    }
+    if (!slots.isEmpty() && vectors == null) {
+      throw new IOException("segment log without vectors in " + directory);
+    }
+  }
+
+  /**
+   * Rewrites the vectors and the log with the live slots only, renumbered in slot order. Both
+   * files are written next to the current ones and renamed into place; {@link #finishCompaction}
+   * completes the renames if the process stops between them.
+   */
+  private void compact() throws IOException {
+    long start = System.nanoTime();
+    int dead = entries.size() - slots.size();
+    Path vectorsTmp = directory.resolve(VECTORS_FILE + TMP);
+    Path logTmp = directory.resolve(LOG_FILE + TMP);
+    try (VectorFile compacted = VectorFile.create(vectorsTmp, vectors.dimension());
+        FileChannel channel =
+            FileChannel.open(logTmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      segmentLog =
+          new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      int next = 0;
+      for (int slot = 0; slot < entries.size(); slot++) {
+        Entry entry = entries.get(slot);
+        if (entry != null) {
+          compacted.write(next, vectors.read(slot));
+          writeAdd(next++, entry);
+        }
+      }
+      segmentLog.flush();
+      channel.force(true);
+    } finally {
+      segmentLog = null;
+    }
+    vectors.close();
+    // The log rename commits the compaction, so it goes last.
+    Files.move(
+        vectorsTmp, directory.resolve(VECTORS_FILE + COMPACTED), StandardCopyOption.ATOMIC_MOVE);
+    Files.move(logTmp, directory.resolve(LOG_FILE + COMPACTED), StandardCopyOption.ATOMIC_MOVE);
+    finishCompaction(directory);
+
+    slots.clear();
+    entries.clear();
+    norms = new float[0];
+    vectors = VectorFile.open(directory.resolve(VECTORS_FILE));
+    replay(directory.resolve(LOG_FILE));
+    log.info(
+        "Compacted {}: dropped {} dead slots in {} ms",
+        directory,
+        dead,
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /** Moves a committed compaction into place and drops the leftovers of an unfinished one. */
+  private static void finishCompaction(Path directory) throws IOException {
+    Path compactedVectors = directory.resolve(VECTORS_FILE + COMPACTED);
+    Path compactedLog = directory.resolve(LOG_FILE + COMPACTED);
+    if (Files.exists(compactedLog)) {
+      if (Files.exists(compactedVectors)) {
+        Files.move(
+            compactedVectors,
+            directory.resolve(VECTORS_FILE),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      }
+      Files.move(
+          compactedLog,
+          directory.resolve(LOG_FILE),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    Files.deleteIfExists(compactedVectors);
+    Files.deleteIfExists(directory.resolve(VECTORS_FILE + TMP));
+    Files.deleteIfExists(directory.resolve(LOG_FILE + TMP));
+  }
+
+  private void writeAdd(int slot, Entry entry) throws IOException {
+    segmentLog.writeByte(ADD);
+    segmentLog.writeInt(slot);
+    writeString(entry.getId());
+    segmentLog.writeFloat(entry.getNorm());
+    TextSegment segment = entry.getSegment();
+    segmentLog.writeBoolean(segment != null);
+    if (segment != null) {
+      writeString(segment.text());
+      Map<String, Object> metadata = segment.metadata().toMap();
+      segmentLog.writeInt(metadata.size());
+      for (Map.Entry<String, Object> field : metadata.entrySet()) {
+        writeString(field.getKey());
+        Object value = field.getValue();
+        segmentLog.writeByte(typeOf(value));
+        writeString(String.valueOf(value));
+      }
+    }
+  }
+
+  private static TextSegment readSegment(DataInputStream in) throws IOException {
+    String text = readString(in);
+    int size = in.readInt();
+    Map<String, Object> metadata = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      String key = readString(in);
+      char type = (char) in.readByte();
+      metadata.put(key, parse(type, readString(in)));
+    }
+    return TextSegment.from(text, Metadata.from(metadata));
+  }
+
+  private static char typeOf(Object value) {
+    return switch (value) {
+      case Integer i -> 'i';
+      case Long l -> 'l';
+      case Float f -> 'f';
+      case Double d -> 'd';
+      case UUID u -> 'u';
+      default -> 's';
+    };
+  }
+
+  private static Object parse(char type, String value) {
+    return switch (type) {
+      case 'i' -> Integer.valueOf(value);
+      case 'l' -> Long.valueOf(value);
+      case 'f' -> Float.valueOf(value);
+      case 'd' -> Double.valueOf(value);
+      case 'u' -> UUID.fromString(value);
+      default -> value;
+    };
+  }
+
+  private void writeString(String value) throws IOException {
+    byte[] bytes = value.getBytes(UTF_8);
+    segmentLog.writeInt(bytes.length);
+    segmentLog.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static boolean matches(Filter filter, Entry entry) {
+    return filter == null
+        || (entry.getSegment() != null && filter.test(entry.getSegment().metadata()));
+  }
+
+  private QuantizedVectors codes() {
+    if (codes == null) {
+      boolean simd = quantization.isVectorApi() && QuantizedVectors.vectorApiAvailable();
+      if (quantization.isVectorApi() && !simd) {
+        log.warn(
+            "Vector API needs a -Pvector-api build, --add-modules jdk.incubator.vector and"
+                + " 256-bit vectors, comparing codes with plain loops");
+      }
+      codes = new QuantizedVectors(quantization.getMode(), vectors.dimension(), simd);
+    }
+    return codes;
+  }
+
+  private void encodeAll() throws IOException {
+    for (int slot : slots.values()) {
+      codes().set(slot, unit(vectors.read(slot)));
+    }
+    if (codes != null) {
+      log.info("Encoded {} codes in {} KB off-heap", quantization.getMode(), codes.bytes() / 1024);
+    }
+  }
+
+  private void buildIndex() throws IOException {
+    long start = System.nanoTime();
+    index = new HnswIndex(new IndexVectors(), hnswOptions);
+    int[] live = slots.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+    try {
+      index.insertAll(live, hnswOptions.getBuildParallelism());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Building the HNSW index was interrupted");
+    }
+    log.info("Indexed {} vectors in {} ms", live.length, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /** Cosine similarity of the vector in {@code slot} with the unit vector {@code query}. */
+  private double cosine(int slot, float[] query) throws IOException {
+    float norm = norms[slot];
+    return norm == 0 ? 0 : vectors.dot(slot, query) / norm;
+  }
+
+  private static float[] unit(float[] vector) {
+    float norm = norm(vector);
+    float[] unit = new float[vector.length];
+    for (int i = 0; i < vector.length && norm > 0; i++) {
+      unit[i] = vector[i] / norm;
+    }
+    return unit;
+  }
+
+  static float norm(float[] vector) {
+    double sum = 0;
+    for (float v : vector) {
+      sum += v * v;
+    }
+    return (float) Math.sqrt(sum);
+  }
+
+  /** Unit vectors for the index, so its similarity is the cosine similarity. */
+  private final class IndexVectors implements HnswIndex.Vectors {
+    @Override
+    public float[] vector(int slot) {
+      try {
+        return unit(vectors.read(slot));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public double similarity(float[] query, int slot) {
+      if (codes != null) {
+        return codes.similarity(query, slot);
+      }
+      try {
+        return cosine(slot, query);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  @Value(staticConstructor = "of")
+  static class Entry {
+    String id;
+    TextSegment segment;
+    float norm;
+  }
+
+  private static final class CountingInputStream extends FilterInputStream {
+    long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package org.feuyeux.ai.hello.repository.store;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.booleanValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import java.util.Locale;
+import lombok.Builder;
+import lombok.Value;
+import org.feuyeux.ai.hello.util.DotEnvConfig;
+
+/** Compact vector codes used by {@link MappedEmbeddingStore} for a first pass before re-ranking. */
+@Value
+@Builder
+public class QuantizationOptions {
+  public enum Mode {
+    /** Search on the float vectors only. */
+    NONE,
+    /** One signed byte per dimension plus a scale per vector, about 4x smaller than floats. */
+    INT8,
+    /** One sign bit per dimension, 32x smaller than floats. */
+    BINARY
+  }
+
+  @Builder.Default Mode mode = Mode.NONE;
+
+  /** The first pass keeps {@code maxResults * rerankFactor} candidates for the float re-rank. */
+  @Builder.Default int rerankFactor = 4;
+
+  /**
+   * Compares int8 codes with the incubating Vector API; needs {@code --add-modules
+   * jdk.incubator.vector} and 256-bit vectors, else the plain loops are used.
+   */
+  @Builder.Default boolean vectorApi = false;
+
+  public static QuantizationOptions fromEnv() {
+    return QuantizationOptions.builder()
+        .mode(
+            Mode.valueOf(
+                DotEnvConfig.valueOf("VECTOR_QUANTIZATION")
+                    .orElse("none")
+                    .trim()
+                    .toUpperCase(Locale.ROOT)))
+        .rerankFactor(intValueOf("QUANTIZATION_RERANK_FACTOR", 4))
+        .vectorApi(booleanValueOf("QUANTIZATION_VECTOR_API", false))
+        .build();
+  }
+
+  boolean enabled() {
+    return mode != Mode.NONE;
+  }
+}
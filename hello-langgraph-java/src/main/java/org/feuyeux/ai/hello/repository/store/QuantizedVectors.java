@@ -0,0 +1,198 @@
+package org.feuyeux.ai.hello.repository.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.feuyeux.ai.hello.repository.store.QuantizationOptions.Mode;
+
+/**
+ * Quantized codes of unit vectors in off-heap memory, addressed by slot like {@link VectorFile}.
+ * Similarities computed here are approximate and only used to pick candidates for an exact
+ * re-rank on the float vectors.
+ *
+ * <p>Int8 codes are compared with {@link Kernels} when {@code simd} is set, otherwise with
+ * plain loops that C2 does not vectorize well: widening byte products and reducing them into a
+ * sum. Binary codes are compared with {@code Long.bitCount}, which compiles to POPCNT.
+ */
+final class QuantizedVectors {
+  private static final int PAGE_SLOTS = 4096;
+  private static final Kernels KERNELS = loadKernels();
+
+  private final Mode mode;
+  private final int dimension;
+  private final int codeBytes;
+  private final boolean simd;
+  private final List<ByteBuffer> pages = new CopyOnWriteArrayList<>();
+
+  QuantizedVectors(Mode mode, int dimension, boolean simd) {
+    if (mode == Mode.NONE) {
+      throw new IllegalArgumentException("no quantization mode");
+    }
+    this.mode = mode;
+    this.dimension = dimension;
+    this.simd = simd && mode == Mode.INT8;
+    this.codeBytes =
+        mode == Mode.INT8 ? Float.BYTES + dimension : Long.BYTES * ((dimension + 63) / 64);
+  }
+
+  /** Int8 code products; implemented by VectorKernels, which {@code -Pvector-api} compiles. */
+  interface Kernels {
+    /** Whether this CPU runs the kernels faster than plain loops. */
+    boolean supported();
+
+    /** Dot product of two int8 codes of equal length. */
+    int dot(byte[] a, byte[] b);
+
+    /** Dot product of a float vector with an int8 code of equal length. */
+    double dot(float[] a, byte[] b);
+  }
+
+  /** Whether {@link Kernels} can be used: compiled in, the module present, the CPU wide enough. */
+  static boolean vectorApiAvailable() {
+    return KERNELS != null;
+  }
+
+  private static Kernels loadKernels() {
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      return null;
+    }
+    try {
+      Kernels kernels =
+          (Kernels)
+              Class.forName(QuantizedVectors.class.getPackageName() + ".VectorKernels")
+                  .getDeclaredConstructor()
+                  .newInstance();
+      return kernels.supported() ? kernels : null;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  int dimension() {
+    return dimension;
+  }
+
+  /** Off-heap bytes reserved for codes. */
+  long bytes() {
+    return (long) pages.size() * PAGE_SLOTS * codeBytes;
+  }
+
+  void set(int slot, float[] unit) {
+    ByteBuffer page = page(slot);
+    int offset = offset(slot);
+    Query code = encode(unit);
+    if (mode == Mode.INT8) {
+      page.putFloat(offset, code.scale);
+      page.put(offset + Float.BYTES, code.codes);
+    } else {
+      for (int i = 0; i < code.bits.length; i++) {
+        page.putLong(offset + i * Long.BYTES, code.bits[i]);
+      }
+    }
+  }
+
+  /** Encodes a unit query vector once per search; the result is not thread-safe. */
+  Query encode(float[] unit) {
+    Query query = new Query();
+    if (mode == Mode.INT8) {
+      float max = 0;
+      for (float v : unit) {
+        max = Math.max(max, Math.abs(v));
+      }
+      query.scale = max / 127;
+      query.codes = new byte[dimension];
+      query.scratch = new byte[dimension];
+      for (int i = 0; i < dimension && max > 0; i++) {
+        query.codes[i] = (byte) Math.round(unit[i] / query.scale);
+      }
+    } else {
+      query.bits = new long[codeBytes / Long.BYTES];
+      for (int i = 0; i < dimension; i++) {
+        if (unit[i] > 0) {
+          query.bits[i >>> 6] |= 1L << i;
+        }
+      }
+    }
+    return query;
+  }
+
+  /** Approximate cosine similarity between an encoded query and the code in {@code slot}. */
+  double similarity(Query query, int slot) {
+    ByteBuffer page = page(slot);
+    int offset = offset(slot);
+    if (mode == Mode.INT8) {
+      float scale = page.getFloat(offset);
+      byte[] codes = query.scratch;
+      page.get(offset + Float.BYTES, codes);
+      int dot = 0;
+      if (simd) {
+        dot = KERNELS.dot(query.codes, codes);
+      } else {
+        for (int i = 0; i < dimension; i++) {
+          dot += query.codes[i] * codes[i];
+        }
+      }
+      return dot * (double) query.scale * scale;
+    }
+    int differing = 0;
+    for (int i = 0; i < query.bits.length; i++) {
+      differing += Long.bitCount(query.bits[i] ^ page.getLong(offset + i * Long.BYTES));
+    }
+    return 1 - 2.0 * differing / dimension;
+  }
+
+  /**
+   * Approximate cosine similarity between a float unit vector and the code in {@code slot}; used
+   * while walking the HNSW graph, where the query changes with every insert.
+   */
+  double similarity(float[] unit, int slot) {
+    ByteBuffer page = page(slot);
+    int offset = offset(slot);
+    double dot = 0;
+    if (mode == Mode.INT8) {
+      byte[] codes = new byte[dimension];
+      page.get(offset + Float.BYTES, codes);
+      if (simd) {
+        dot = KERNELS.dot(unit, codes);
+      } else {
+        for (int i = 0; i < dimension; i++) {
+          dot += unit[i] * codes[i];
+        }
+      }
+      return dot * page.getFloat(offset);
+    }
+    for (int i = 0; i < dimension; i++) {
+      long word = page.getLong(offset + (i >>> 6) * Long.BYTES);
+      dot += (word & (1L << i)) != 0 ? unit[i] : -unit[i];
+    }
+    return dot / Math.sqrt(dimension);
+  }
+
+  private int offset(int slot) {
+    return (slot % PAGE_SLOTS) * codeBytes;
+  }
+
+  private ByteBuffer page(int slot) {
+    int index = slot / PAGE_SLOTS;
+    if (index < pages.size()) {
+      return pages.get(index);
+    }
+    return allocatePages(index);
+  }
+
+  private synchronized ByteBuffer allocatePages(int index) {
+    while (pages.size() <= index) {
+      pages.add(ByteBuffer.allocateDirect(PAGE_SLOTS * codeBytes).order(ByteOrder.LITTLE_ENDIAN));
+    }
+    return pages.get(index);
+  }
+
+  /** An encoded query together with the scratch space for comparing it. */
+  static final class Query {
+    private float scale;
+    private byte[] codes;
+    private byte[] scratch;
+    private long[] bits;
+  }
+}
@@ -0,0 +1,128 @@
+package org.feuyeux.ai.hello.repository.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fixed-width float vectors in a memory-mapped file, addressed by slot. The file is mapped in
+ * regions of {@link #REGION_SLOTS} vectors that are added as slots grow, so vectors live in the
+ * page cache rather than on the Java heap and are available right after reopening.
+ */
+final class VectorFile implements Closeable {
+  private static final int MAGIC = 0x56454331; // "VEC1"
+  private static final int HEADER_BYTES = 16;
+  static final int REGION_SLOTS = 4096;
+
+  private final FileChannel channel;
+  private final int dimension;
+  // Copy-on-write so searches can read regions while a writer maps a new one.
+  private final List<MappedByteBuffer> regions = new CopyOnWriteArrayList<>();
+  private final List<FloatBuffer> floats = new CopyOnWriteArrayList<>();
+
+  private VectorFile(FileChannel channel, int dimension) {
+    this.channel = channel;
+    this.dimension = dimension;
+  }
+
+  /** Creates a new vector file for vectors of {@code dimension} floats. */
+  static VectorFile create(Path path, int dimension) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(dimension).rewind();
+    channel.write(header, 0);
+    return new VectorFile(channel, dimension);
+  }
+
+  /** Opens an existing vector file; returns {@code null} if there is none. */
+  static VectorFile open(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    channel.read(header, 0);
+    header.flip();
+    if (header.remaining() < 8 || header.getInt() != MAGIC) {
+      channel.close();
+      throw new IOException("not a vector file: " + path);
+    }
+    return new VectorFile(channel, header.getInt());
+  }
+
+  int dimension() {
+    return dimension;
+  }
+
+  void write(int slot, float[] vector) throws IOException {
+    FloatBuffer region = region(slot);
+    region.put(offset(slot), vector);
+  }
+
+  float[] read(int slot) throws IOException {
+    float[] vector = new float[dimension];
+    region(slot).get(offset(slot), vector);
+    return vector;
+  }
+
+  /** Dot product of the vector in {@code slot} with {@code query}. */
+  double dot(int slot, float[] query) throws IOException {
+    FloatBuffer region = region(slot);
+    int offset = offset(slot);
+    double sum = 0;
+    for (int i = 0; i < dimension; i++) {
+      sum += region.get(offset + i) * query[i];
+    }
+    return sum;
+  }
+
+  /** Writes dirty pages to disk. */
+  void force() {
+    regions.forEach(MappedByteBuffer::force);
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  private int offset(int slot) {
+    return (slot % REGION_SLOTS) * dimension;
+  }
+
+  private FloatBuffer region(int slot) throws IOException {
+    int index = slot / REGION_SLOTS;
+    if (index < floats.size()) {
+      return floats.get(index);
+    }
+    return mapRegions(index);
+  }
+
+  private synchronized FloatBuffer mapRegions(int index) throws IOException {
+    while (floats.size() <= index) {
+      long regionBytes = (long) REGION_SLOTS * dimension * Float.BYTES;
+      long position = HEADER_BYTES + floats.size() * regionBytes;
+      // Mapping past the end grows the file.
+      MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, position, regionBytes);
+      region.order(ByteOrder.LITTLE_ENDIAN);
+      regions.add(region);
+      floats.add(region.asFloatBuffer());
+    }
+    return floats.get(index);
+  }
+}
@@ -0,0 +1,43 @@
+package org.feuyeux.ai.hello.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.DotEnvConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Answers the questions in {@code BATCH_INPUT} on start-up and writes them as JSONL to {@code
+ * BATCH_OUTPUT}, {@code <input>.answers.jsonl} by default. Does nothing when no input is set.
+ */
+@Slf4j
+@Component
+public class BatchJob implements ApplicationRunner {
+  @Autowired private LanggraphService langgraphService;
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    Optional<Path> input = DotEnvConfig.valueOf("BATCH_INPUT").map(Path::of);
+    if (input.isEmpty()) {
+      return;
+    }
+    Path output =
+        DotEnvConfig.valueOf("BATCH_OUTPUT")
+            .map(Path::of)
+            .orElse(Path.of(input.get() + ".answers.jsonl"));
+    log.info("Answering the questions in {} into {}", input.get(), output);
+    BatchRunner runner = langgraphService.batchRunner(BatchOptions.fromEnv());
+    try (BufferedReader questions = Files.newBufferedReader(input.get(), UTF_8);
+        Writer answers = Files.newBufferedWriter(output, UTF_8)) {
+      runner.run(questions, answers);
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package org.feuyeux.ai.hello.service;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Tuning knobs of {@link BatchRunner}, read from the environment or {@code .env}. */
+@Value
+@Builder
+public class BatchOptions {
+  /** Graph runs in flight at once. */
+  @Builder.Default int parallelism = 8;
+
+  /** Questions routed together in one LLM call; 1 routes every question in its own run. */
+  @Builder.Default int routeBatchSize = 32;
+
+  public static BatchOptions fromEnv() {
+    return BatchOptions.builder()
+        .parallelism(intValueOf("BATCH_PARALLELISM", 8))
+        .routeBatchSize(intValueOf("BATCH_ROUTE_SIZE", 32))
+        .build();
+  }
+}
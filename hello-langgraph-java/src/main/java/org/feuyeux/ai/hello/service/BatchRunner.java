@@ -0,0 +1,201 @@
+package org.feuyeux.ai.hello.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.fun.QuestionRouterEdgeFn;
+
+/**
+ * Answers a stream of questions for offline jobs, tuned for throughput: questions are routed
+ * {@code routeBatchSize} at a time in one LLM call, up to {@code parallelism} graph runs execute
+ * concurrently on virtual threads, and every answer is written as one JSONL line as soon as it is
+ * ready, so output order follows completion order.
+ *
+ * <p>Input lines are either plain questions or JSON objects with a {@code question} and an
+ * optional {@code id}; blank lines are skipped. Output lines carry {@code id}, {@code question},
+ * {@code route}, {@code generation} or {@code error}, and {@code millis}.
+ */
+@Slf4j
+public class BatchRunner {
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  /** Answers one question; the route is {@code null} when it could not be decided up front. */
+  public interface Answerer {
+    String answer(String question, QuestionRouterEdgeFn.Type route) throws Exception;
+  }
+
+  private final Function<List<String>, List<QuestionRouterEdgeFn.Type>> router;
+  private final Answerer answerer;
+  private final BatchOptions options;
+
+  public BatchRunner(
+      Function<List<String>, List<QuestionRouterEdgeFn.Type>> router,
+      Answerer answerer,
+      BatchOptions options) {
+    this.router = router;
+    this.answerer = answerer;
+    this.options = options;
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Report {
+    int questions;
+    int failed;
+    int routeCalls;
+    Duration elapsed;
+
+    public double questionsPerMinute() {
+      long millis = Math.max(1, elapsed.toMillis());
+      return questions * 60_000.0 / millis;
+    }
+  }
+
+  private record Item(String id, String question) {}
+
+  public Report run(BufferedReader questions, Writer out) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    AtomicInteger failed = new AtomicInteger();
+    int total = 0;
+    int routeCalls = 0;
+    Semaphore inFlight = new Semaphore(Math.max(1, options.getParallelism()));
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<Item> chunk = new ArrayList<>();
+      String line;
+      int lineNumber = 0;
+      while ((line = questions.readLine()) != null) {
+        lineNumber++;
+        Item item = parse(line, lineNumber);
+        if (item == null) {
+          continue;
+        }
+        chunk.add(item);
+        if (chunk.size() >= Math.max(1, options.getRouteBatchSize())) {
+          routeCalls += dispatch(chunk, executor, inFlight, out, failed);
+          total += chunk.size();
+          chunk = new ArrayList<>();
+        }
+      }
+      if (!chunk.isEmpty()) {
+        routeCalls += dispatch(chunk, executor, inFlight, out, failed);
+        total += chunk.size();
+      }
+    }
+    Report report =
+        Report.of(total, failed.get(), routeCalls, Duration.ofNanos(System.nanoTime() - start));
+    log.info(
+        "Answered {} questions ({} failed) in {} with {} routing calls: {} questions/minute",
+        report.getQuestions(),
+        report.getFailed(),
+        report.getElapsed(),
+        report.getRouteCalls(),
+        String.format("%.1f", report.questionsPerMinute()));
+    return report;
+  }
+
+  /** Routes {@code chunk} and starts its graph runs; returns the number of routing calls made. */
+  private int dispatch(
+      List<Item> chunk,
+      ExecutorService executor,
+      Semaphore inFlight,
+      Writer out,
+      AtomicInteger failed)
+      throws InterruptedException {
+    List<QuestionRouterEdgeFn.Type> routes = Collections.nCopies(chunk.size(), null);
+    int routeCalls = 0;
+    if (chunk.size() > 1 && options.getRouteBatchSize() > 1) {
+      routeCalls = 1;
+      try {
+        List<QuestionRouterEdgeFn.Type> routed =
+            router.apply(chunk.stream().map(Item::question).toList());
+        if (routed.size() == chunk.size()) {
+          routes = routed;
+        }
+      } catch (CancellationException | RejectedExecutionException e) {
+        // Routing every question on its own would only add load to a saturated server.
+        throw e;
+      } catch (RuntimeException e) {
+        log.warn("Batch routing failed, routing questions in their runs: {}", e.getMessage());
+      }
+    }
+    for (int i = 0; i < chunk.size(); i++) {
+      Item item = chunk.get(i);
+      QuestionRouterEdgeFn.Type route = routes.get(i);
+      inFlight.acquire();
+      executor.submit(
+          () -> {
+            long start = System.nanoTime();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", item.id());
+            result.put("question", item.question());
+            if (route != null) {
+              result.put("route", route.name());
+            }
+            try {
+              result.put("generation", answerer.answer(item.question(), route));
+            } catch (Exception e) {
+              failed.incrementAndGet();
+              result.put("error", String.valueOf(e));
+            } finally {
+              inFlight.release();
+            }
+            result.put("millis", Duration.ofNanos(System.nanoTime() - start).toMillis());
+            write(out, result);
+          });
+    }
+    return routeCalls;
+  }
+
+  private static Item parse(String line, int lineNumber) {
+    String text = line.strip();
+    if (text.isEmpty()) {
+      return null;
+    }
+    if (!text.startsWith("{")) {
+      return new Item(String.valueOf(lineNumber), text);
+    }
+    JsonNode node;
+    try {
+      node = JSON.readTree(text);
+    } catch (JsonProcessingException e) {
+      log.warn("Skipping malformed line {}: {}", lineNumber, e.getOriginalMessage());
+      return null;
+    }
+    String question = node.path("question").asText("").strip();
+    if (question.isEmpty()) {
+      log.warn("Skipping line {} without a question", lineNumber);
+      return null;
+    }
+    String id = node.hasNonNull("id") ? node.get("id").asText() : String.valueOf(lineNumber);
+    return new Item(id, question);
+  }
+
+  private static void write(Writer out, Map<String, Object> result) {
+    synchronized (out) {
+      try {
+        out.write(JSON.writeValueAsString(result));
+        out.write('\n');
+        out.flush();
+      } catch (IOException e) {
+        log.error("Failed to write the answer of {}: {}", result.get("id"), e.getMessage());
+      }
+    }
+  }
+}
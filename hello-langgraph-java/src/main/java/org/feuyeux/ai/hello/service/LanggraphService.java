@@ -1,13 +1,28 @@
 package org.feuyeux.ai.hello.service;
 
-import static org.bsc.langgraph4j.utils.CollectionsUtils.mapOf;
-
 import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.NodeOutput;
+import org.feuyeux.ai.hello.fun.EmbeddingRouterEdgeFn;
+import org.feuyeux.ai.hello.fun.QuestionRouterEdgeFn;
+import org.feuyeux.ai.hello.fun.WebSearchNodeFn;
 import org.feuyeux.ai.hello.graph.AdaptiveRagGraph;
+import org.feuyeux.ai.hello.graph.Speculator;
 import org.feuyeux.ai.hello.repository.HelloEmbeddingStore;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+import org.feuyeux.ai.hello.util.Deadline;
 import org.feuyeux.ai.hello.util.DotEnvConfig;
+import org.feuyeux.ai.hello.util.EndpointBalancer;
+import org.feuyeux.ai.hello.util.LruCache;
+import org.feuyeux.ai.hello.util.Queries;
+import org.feuyeux.ai.hello.util.SingleFlight;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -15,10 +30,21 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class LanggraphService {
   @Autowired private HelloEmbeddingStore helloEmbeddingStore;
+  @Autowired private ModelRegistry modelRegistry;
 
+  private AdaptiveRagGraph adaptiveRagGraph;
   private CompiledGraph<AdaptiveRagGraph.State> graph;
+  private SemanticAnswerCache answerCache;
+  // Concurrent duplicates of a question share the in-flight graph run. A follower waits at most
+  // followerTimeout (null waits indefinitely) and can be interrupted without affecting the run;
+  // a failed run fails its followers too, unless the leader's own request was cancelled or out of
+  // time, in which case a follower runs the graph again within its own deadline.
+  private final SingleFlight<String, String> graphRuns = new SingleFlight<>();
+  private Duration followerTimeout;
+  // Deadline of calls made without one, e.g. by batch jobs; null leaves them unbounded.
+  private Duration requestTimeout;
 
-  // Ollama base URL
+  // Ollama base URL, or a comma-separated list of servers to balance calls across
   public static String getOllamaBaseUrl() {
     return DotEnvConfig.valueOf("OLLAMA_BASE_URL").orElse("http://localhost:11434");
   }
@@ -30,21 +56,179 @@ public class LanggraphService {
   }
 
   public String generate(String question) throws Exception {
-    org.bsc.async.AsyncGenerator<org.bsc.langgraph4j.NodeOutput<AdaptiveRagGraph.State>> result =
-        graph.stream(mapOf("question", question));
-    StringBuilder generationBuilder = new StringBuilder();
-    for (org.bsc.langgraph4j.NodeOutput<AdaptiveRagGraph.State> r : result) {
-      log.info("Node: '{}':\n", r.node());
-      generationBuilder.append(r.state().generation().orElse(""));
+    return generate(question, null);
+  }
+
+  /**
+   * Like {@link #generate(String)}, with the route already decided; {@code null} routes it. Runs
+   * under the caller's {@link Deadline}, or one of {@code REQUEST_TIMEOUT_SECONDS} if it has none.
+   */
+  public String generate(String question, QuestionRouterEdgeFn.Type route) throws Exception {
+    if (Deadline.current().isEmpty() && requestTimeout != null) {
+      return Deadline.after(requestTimeout).run(() -> generate(question, route));
+    }
+    Optional<SemanticAnswerCache.Hit> cached = answerCache.lookup(question);
+    if (cached.isPresent()) {
+      log.info(
+          "Answering from cache: '{}' (similarity {})",
+          cached.get().getQuestion(),
+          cached.get().getSimilarity());
+      return cached.get().getGeneration();
+    }
+    return graphRuns.call(
+        Queries.normalize(question), () -> answer(question, route), followerTimeout());
+  }
+
+  /**
+   * Runs the graph for {@code question}, passing generation tokens to {@code onToken} as they
+   * arrive and the name of every finished node to {@code onNode}, and returns the final generation.
+   * Streaming runs are not coalesced, since every caller needs its own tokens.
+   */
+  public String stream(String question, Consumer<String> onToken, Consumer<String> onNode)
+      throws Exception {
+    if (Deadline.current().isEmpty() && requestTimeout != null) {
+      return Deadline.after(requestTimeout).run(() -> stream(question, onToken, onNode));
+    }
+    Optional<SemanticAnswerCache.Hit> cached = answerCache.lookup(question);
+    if (cached.isPresent()) {
+      onNode.accept("answer_cache");
+      onToken.accept(cached.get().getGeneration());
+      return cached.get().getGeneration();
+    }
+    long corpusVersion = helloEmbeddingStore.getCorpusVersion();
+    String streamId = adaptiveRagGraph.openTokenStream(onToken);
+    String runId = adaptiveRagGraph.openRun();
+    try {
+      AdaptiveRagGraph.State last = null;
+      for (NodeOutput<AdaptiveRagGraph.State> output :
+          graph.stream(
+              Map.of(
+                  "question", question,
+                  "stream_id", streamId,
+                  "run_id", runId,
+                  "started_at", System.currentTimeMillis()))) {
+        onNode.accept(output.node());
+        last = output.state();
+        checkDeadline();
+      }
+      return finish(question, last, corpusVersion);
+    } finally {
+      adaptiveRagGraph.closeRun(runId);
+      adaptiveRagGraph.closeTokenStream(streamId);
+    }
+  }
+
+  /** Batch runner answering through {@link #generate(String, QuestionRouterEdgeFn.Type)}. */
+  public BatchRunner batchRunner(BatchOptions options) {
+    QuestionRouterEdgeFn router = QuestionRouterEdgeFn.of(modelRegistry, getOllamaBaseUrl());
+    return new BatchRunner(router::applyBatch, this::generate, options);
+  }
+
+  public LruCache.Stats getAnswerCacheStats() {
+    return answerCache.stats();
+  }
+
+  public Speculator.Stats getSpeculationStats() {
+    return adaptiveRagGraph.getSpeculationStats();
+  }
+
+  /** Concurrency limit, queue times and lane usage per Ollama server. */
+  public Map<String, AdaptiveLimiter.Stats> getModelLimiterStats() {
+    return modelRegistry.limiterStats();
+  }
+
+  /** Outstanding calls, failures and ejection of each Ollama server. */
+  public Map<String, List<EndpointBalancer.EndpointStats>> getModelBalancerStats() {
+    return modelRegistry.balancerStats();
+  }
+
+  /** Decisions and LLM fallbacks of the embedding router, empty when it is disabled. */
+  public Optional<EmbeddingRouterEdgeFn.Stats> getRouterStats() {
+    return adaptiveRagGraph.getEmbeddingRouter().map(EmbeddingRouterEdgeFn::stats);
+  }
+
+  /** Agreement of the embedding router with the LLM router, once evaluated at startup. */
+  public Optional<EmbeddingRouterEdgeFn.Evaluation> getRouterEvaluation() {
+    return adaptiveRagGraph.getRouterEvaluation();
+  }
+
+  /** Calls that waited for an identical question already in flight instead of running the graph. */
+  public long getCoalescedRuns() {
+    return graphRuns.followers();
+  }
+
+  private String answer(String question, QuestionRouterEdgeFn.Type route) throws Exception {
+    long corpusVersion = helloEmbeddingStore.getCorpusVersion();
+    return finish(question, runGraph(question, route), corpusVersion);
+  }
+
+  /** Stops a run at a node boundary once its request is cancelled or out of time. */
+  private static void checkDeadline() {
+    Deadline.current().ifPresent(Deadline::check);
+  }
+
+  /** The follower timeout, shortened to the time the request has left. */
+  private Duration followerTimeout() {
+    Optional<Duration> remaining = Deadline.current().map(Deadline::remaining);
+    if (remaining.isPresent()
+        && (followerTimeout == null || remaining.get().compareTo(followerTimeout) < 0)) {
+      return remaining.get();
+    }
+    return followerTimeout;
+  }
+
+  /** Caches the answer of a completed run; a run cut short by its budget is not cached. */
+  private String finish(String question, AdaptiveRagGraph.State last, long corpusVersion) {
+    String generation = last == null ? "" : last.generation().orElse("");
+    if (last != null && last.budgetExhausted()) {
+      log.info("Run for '{}' ran out of budget after {} LLM calls", question, last.llmCalls());
+    } else {
+      answerCache.put(question, generation, corpusVersion);
+    }
+    return generation;
+  }
+
+  private AdaptiveRagGraph.State runGraph(String question, QuestionRouterEdgeFn.Type route)
+      throws Exception {
+    long startedAt = System.currentTimeMillis();
+    String runId = adaptiveRagGraph.openRun();
+    Map<String, Object> inputs =
+        route == null
+            ? Map.of("question", question, "run_id", runId, "started_at", startedAt)
+            : Map.of(
+                "question", question,
+                "route", route.name(),
+                "run_id", runId,
+                "started_at", startedAt);
+    try {
+      org.bsc.async.AsyncGenerator<org.bsc.langgraph4j.NodeOutput<AdaptiveRagGraph.State>> result =
+          graph.stream(inputs);
+      AdaptiveRagGraph.State last = null;
+      for (org.bsc.langgraph4j.NodeOutput<AdaptiveRagGraph.State> r : result) {
+        log.info("Node: '{}':\n", r.node());
+        last = r.state();
+        checkDeadline();
+      }
+      return last;
+    } finally {
+      adaptiveRagGraph.closeRun(runId);
     }
-    return generationBuilder.toString();
   }
 
   @PostConstruct
   public void init() {
+    int timeoutSeconds = DotEnvConfig.intValueOf("COALESCE_FOLLOWER_TIMEOUT_SECONDS", 300);
+    followerTimeout = timeoutSeconds > 0 ? Duration.ofSeconds(timeoutSeconds) : null;
+    int requestTimeoutSeconds = DotEnvConfig.intValueOf("REQUEST_TIMEOUT_SECONDS", 300);
+    requestTimeout = requestTimeoutSeconds > 0 ? Duration.ofSeconds(requestTimeoutSeconds) : null;
+    answerCache =
+        SemanticAnswerCache.fromEnv(
+            helloEmbeddingStore::embedQuery, helloEmbeddingStore::getCorpusVersion);
     try {
-      AdaptiveRagGraph adaptiveRagGraph =
-          new AdaptiveRagGraph(getOllamaBaseUrl(), getTavilyApiKey(), helloEmbeddingStore);
+      String tavilyApiKey = WebSearchNodeFn.usesStubEngine() ? null : getTavilyApiKey();
+      adaptiveRagGraph =
+          new AdaptiveRagGraph(
+              getOllamaBaseUrl(), tavilyApiKey, helloEmbeddingStore, modelRegistry);
       graph = adaptiveRagGraph.buildGraph().compile();
     } catch (Exception e) {
       log.error("", e);
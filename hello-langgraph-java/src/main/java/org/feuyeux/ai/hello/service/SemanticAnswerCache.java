@@ -0,0 +1,146 @@
+package org.feuyeux.ai.hello.service;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.doubleValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.util.LruCache;
+
+/**
+ * Final answers of the graph keyed by question embedding. A question whose embedding has at least
+ * {@code threshold} cosine similarity with a cached question gets that question's answer without
+ * running the graph. Entries expire after {@code ttl}, the least recently stored are evicted beyond
+ * {@code maxEntries}, and everything is dropped when the corpus version changes.
+ */
+@Slf4j
+public class SemanticAnswerCache {
+  private final Function<String, Embedding> embedder;
+  private final LongSupplier corpusVersion;
+  private final double threshold;
+  private final LruCache<String, Answer> answers;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private volatile long version;
+
+  @Value(staticConstructor = "of")
+  static class Answer {
+    Embedding embedding;
+    String generation;
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Hit {
+    String question;
+    String generation;
+    double similarity;
+  }
+
+  public SemanticAnswerCache(
+      Function<String, Embedding> embedder,
+      LongSupplier corpusVersion,
+      int maxEntries,
+      Duration ttl,
+      double threshold) {
+    this.embedder = embedder;
+    this.corpusVersion = corpusVersion;
+    this.threshold = threshold;
+    this.answers = new LruCache<>(maxEntries, ttl);
+    this.version = corpusVersion.getAsLong();
+  }
+
+  public static SemanticAnswerCache fromEnv(
+      Function<String, Embedding> embedder, LongSupplier corpusVersion) {
+    return new SemanticAnswerCache(
+        embedder,
+        corpusVersion,
+        intValueOf("ANSWER_CACHE_SIZE", 512),
+        Duration.ofSeconds(intValueOf("ANSWER_CACHE_TTL_SECONDS", 3600)),
+        doubleValueOf("ANSWER_CACHE_THRESHOLD", 0.95));
+  }
+
+  /** Returns the cached answer of the most similar question above the threshold. */
+  public Optional<Hit> lookup(String question) {
+    invalidateIfStale();
+    if (answers.size() == 0) {
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+    Embedding embedding = embed(question);
+    if (embedding == null) {
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+    // Scan a copy so concurrent lookups and puts only wait for the copy, not the similarities.
+    Hit best = null;
+    for (Map.Entry<String, Answer> entry : answers.snapshot()) {
+      double similarity = CosineSimilarity.between(embedding, entry.getValue().getEmbedding());
+      if (similarity >= threshold && (best == null || similarity > best.similarity)) {
+        best = Hit.of(entry.getKey(), entry.getValue().getGeneration(), similarity);
+      }
+    }
+    if (best == null) {
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+    // Mark the matched question as recently used.
+    answers.get(best.question);
+    hits.incrementAndGet();
+    return Optional.of(best);
+  }
+
+  /**
+   * Caches {@code generation} unless the corpus changed since {@code answerVersion}, the corpus
+   * version the answer was computed against.
+   */
+  public void put(String question, String generation, long answerVersion) {
+    invalidateIfStale();
+    if (generation == null || generation.isBlank() || answerVersion != version) {
+      return;
+    }
+    Embedding embedding = embed(question);
+    if (embedding != null) {
+      answers.put(question, Answer.of(embedding, generation));
+    }
+  }
+
+  public void clear() {
+    answers.clear();
+  }
+
+  public LruCache.Stats stats() {
+    return LruCache.Stats.of(
+        hits.get(), misses.get(), answers.stats().getEvictions(), answers.size());
+  }
+
+  // The cache is an optimization: when embedding fails, the graph answers as usual.
+  private Embedding embed(String question) {
+    try {
+      return embedder.apply(question);
+    } catch (RuntimeException e) {
+      log.warn("Embedding the question for the answer cache failed: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  private void invalidateIfStale() {
+    long current = corpusVersion.getAsLong();
+    if (current != version) {
+      synchronized (this) {
+        if (current != version) {
+          log.info("Corpus changed, dropping {} cached answers", answers.size());
+          answers.clear();
+          version = current;
+        }
+      }
+    }
+  }
+}
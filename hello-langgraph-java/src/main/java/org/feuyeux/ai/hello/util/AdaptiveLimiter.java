@@ -0,0 +1,328 @@
+package org.feuyeux.ai.hello.util;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adaptive concurrency limit in front of one model server (AIMD). The limit grows by one per
+ * limit's worth of successful calls while it is in use, and shrinks by {@code backoff} when a call
+ * times out or a short call takes longer than {@code latencyTolerance} times the baseline (the
+ * slowly rising minimum) latency of its call class; at most once per round trip. A call class
+ * groups calls of similar cost, e.g. one model role and batch size, so a batch is not measured
+ * against single calls. Generation latency depends on the answer length, so generations only count
+ * as overload when they time out.
+ *
+ * <p>Callers queue per {@link Lane}. A free slot goes to the first waiter of the highest-priority
+ * lane that can use it, and generations and bulk work may only occupy a share of the limit, so
+ * short calls are not stuck behind long ones. Waiting respects the caller's {@link Deadline}.
+ */
+@Slf4j
+public final class AdaptiveLimiter {
+  /** Lanes in order of priority. */
+  public enum Lane {
+    /** Query embeddings. */
+    EMBEDDING,
+    /** Short structured calls: routing, grading, rewriting. */
+    GRADING,
+    /** Answer generation. */
+    GENERATION,
+    /** Background work such as ingestion. */
+    BULK
+  }
+
+  // How fast a call class's baseline latency follows slower samples.
+  private static final double BASELINE_DRIFT = 0.01;
+  // Waiters re-check their deadline at least this often.
+  private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final LimiterOptions options;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final Map<Lane, ArrayDeque<Object>> waiting = new EnumMap<>(Lane.class);
+  private final Map<Lane, LaneCounters> lanes = new EnumMap<>(Lane.class);
+  // Baseline latency per call class of the embedding and grading lanes.
+  private final Map<String, Double> baselineNanos = new HashMap<>();
+  private double limit;
+  private int inFlight;
+  private int queued;
+  private long lastDecreaseNanos;
+
+  @Value(staticConstructor = "of")
+  public static class LaneStats {
+    long acquired;
+    long rejected;
+    int inFlight;
+    int queued;
+    double avgQueueMillis;
+    double maxQueueMillis;
+  }
+
+  @Value(staticConstructor = "of")
+  public static class Stats {
+    int limit;
+    int inFlight;
+    int queued;
+    Map<Lane, LaneStats> lanes;
+    Map<String, Double> baselineMillis;
+  }
+
+  /** A slot held by one call; release it exactly once. */
+  public final class Permit {
+    private final Lane lane;
+    private final String callClass;
+    private final long startNanos = System.nanoTime();
+    private final int inFlightAtStart;
+
+    private Permit(Lane lane, String callClass, int inFlightAtStart) {
+      this.lane = lane;
+      this.callClass = callClass;
+      this.inFlightAtStart = inFlightAtStart;
+    }
+
+    /** Releases after a successful call, which adds a latency sample. */
+    public void release() {
+      AdaptiveLimiter.this.release(this, Outcome.SUCCESS);
+    }
+
+    /** Releases after a failed call; only timeouts mean overload. */
+    public void release(Throwable failure) {
+      AdaptiveLimiter.this.release(this, isOverload(failure) ? Outcome.OVERLOAD : Outcome.IGNORED);
+    }
+  }
+
+  private enum Outcome {
+    SUCCESS,
+    OVERLOAD,
+    IGNORED
+  }
+
+  private static final class LaneCounters {
+    int inFlight;
+    long acquired;
+    long rejected;
+    long queueNanos;
+    long maxQueueNanos;
+  }
+
+  public AdaptiveLimiter(LimiterOptions options) {
+    this.options = options;
+    this.limit =
+        Math.min(
+            options.getMaxConcurrency(),
+            Math.max(options.getMinConcurrency(), options.getInitialConcurrency()));
+    this.lastDecreaseNanos = System.nanoTime();
+    for (Lane lane : Lane.values()) {
+      waiting.put(lane, new ArrayDeque<>());
+      lanes.put(lane, new LaneCounters());
+    }
+  }
+
+  /** Runs {@code work} in a slot of {@code lane}, in the lane's own call class. */
+  public <T> T call(Lane lane, Supplier<T> work) {
+    return call(lane, lane.name(), work);
+  }
+
+  /** Runs {@code work} in a slot of {@code lane}; its latency counts for {@code callClass}. */
+  public <T> T call(Lane lane, String callClass, Supplier<T> work) {
+    Permit permit;
+    try {
+      permit = acquire(lane, callClass);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (CancellationException)
+          new CancellationException("Interrupted while queued for " + lane).initCause(e);
+    }
+    T result;
+    try {
+      result = work.get();
+    } catch (RuntimeException | Error e) {
+      permit.release(e);
+      throw e;
+    }
+    permit.release();
+    return result;
+  }
+
+  /** Waits for a slot of {@code lane}, in the lane's own call class. */
+  public Permit acquire(Lane lane) throws InterruptedException {
+    return acquire(lane, lane.name());
+  }
+
+  /**
+   * Waits for a slot of {@code lane} for a call of {@code callClass}.
+   *
+   * @throws RejectedExecutionException if {@code maxQueued} callers already wait
+   * @throws CancellationException if the caller's {@link Deadline} passes or is cancelled first
+   */
+  public Permit acquire(Lane lane, String callClass) throws InterruptedException {
+    Optional<Deadline> deadline = Deadline.current();
+    long start = System.nanoTime();
+    ArrayDeque<Object> queue = waiting.get(lane);
+    LaneCounters counters = lanes.get(lane);
+    lock.lock();
+    try {
+      if (queue.isEmpty() && admits(lane)) {
+        return admit(lane, callClass, 0);
+      }
+      if (queued >= options.getMaxQueued()) {
+        counters.rejected++;
+        throw new RejectedExecutionException("Too many queued model calls: " + queued);
+      }
+      Object ticket = new Object();
+      queue.add(ticket);
+      queued++;
+      try {
+        while (queue.peek() != ticket || !admits(lane)) {
+          if (deadline.isPresent()) {
+            deadline.get().check();
+            changed.awaitNanos(Math.min(POLL_NANOS, deadline.get().remaining().toNanos()));
+          } else {
+            changed.await();
+          }
+        }
+      } finally {
+        queue.remove(ticket);
+        queued--;
+        // The next waiter of this lane may be first in line now.
+        changed.signalAll();
+      }
+      return admit(lane, callClass, System.nanoTime() - start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Stats stats() {
+    lock.lock();
+    try {
+      Map<Lane, LaneStats> laneStats = new EnumMap<>(Lane.class);
+      for (Lane lane : Lane.values()) {
+        LaneCounters c = lanes.get(lane);
+        laneStats.put(
+            lane,
+            LaneStats.of(
+                c.acquired,
+                c.rejected,
+                c.inFlight,
+                waiting.get(lane).size(),
+                c.acquired == 0 ? 0 : c.queueNanos / 1e6 / c.acquired,
+                c.maxQueueNanos / 1e6));
+      }
+      Map<String, Double> baselineMillis = new TreeMap<>();
+      baselineNanos.forEach((callClass, nanos) -> baselineMillis.put(callClass, nanos / 1e6));
+      return Stats.of(permits(), inFlight, queued, laneStats, baselineMillis);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Permit admit(Lane lane, String callClass, long queueNanos) {
+    LaneCounters counters = lanes.get(lane);
+    inFlight++;
+    counters.inFlight++;
+    counters.acquired++;
+    counters.queueNanos += queueNanos;
+    counters.maxQueueNanos = Math.max(counters.maxQueueNanos, queueNanos);
+    return new Permit(lane, callClass, inFlight);
+  }
+
+  /** Whether a call of {@code lane} may start now without passing over a more urgent waiter. */
+  private boolean admits(Lane lane) {
+    if (inFlight >= permits() || lanes.get(lane).inFlight >= laneCap(lane)) {
+      return false;
+    }
+    for (Lane higher : Lane.values()) {
+      if (higher == lane) {
+        return true;
+      }
+      if (!waiting.get(higher).isEmpty() && lanes.get(higher).inFlight < laneCap(higher)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int permits() {
+    return (int) limit;
+  }
+
+  private int laneCap(Lane lane) {
+    double share =
+        switch (lane) {
+          case GENERATION -> options.getGenerationShare();
+          case BULK -> options.getBulkShare();
+          default -> 1.0;
+        };
+    return Math.max(1, (int) (permits() * share));
+  }
+
+  private void release(Permit permit, Outcome outcome) {
+    long latencyNanos = System.nanoTime() - permit.startNanos;
+    lock.lock();
+    try {
+      inFlight--;
+      LaneCounters counters = lanes.get(permit.lane);
+      counters.inFlight--;
+      if (outcome == Outcome.OVERLOAD) {
+        decrease(permit);
+      } else if (outcome == Outcome.SUCCESS) {
+        boolean slow = false;
+        if (permit.lane == Lane.EMBEDDING || permit.lane == Lane.GRADING) {
+          double baseline =
+              baselineNanos.merge(
+                  permit.callClass,
+                  (double) latencyNanos,
+                  (old, sample) -> Math.min(sample, old + (sample - old) * BASELINE_DRIFT));
+          slow = latencyNanos > options.getLatencyTolerance() * baseline;
+        }
+        if (slow) {
+          decrease(permit);
+        } else if (permit.inFlightAtStart * 2 >= permits()) {
+          limit = Math.min(options.getMaxConcurrency(), limit + 1 / limit);
+        }
+      }
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Multiplicative decrease, once per round trip: calls started before the last one are late. */
+  private void decrease(Permit permit) {
+    if (permit.startNanos - lastDecreaseNanos <= 0) {
+      return;
+    }
+    lastDecreaseNanos = System.nanoTime();
+    limit = Math.max(options.getMinConcurrency(), limit * options.getBackoff());
+    log.debug("Model overload in {}, concurrency limit now {}", permit.lane, permits());
+  }
+
+  private static boolean isOverload(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof CancellationException) {
+        return false;
+      }
+      if (t instanceof TimeoutException
+          || t instanceof SocketTimeoutException
+          || t instanceof HttpTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
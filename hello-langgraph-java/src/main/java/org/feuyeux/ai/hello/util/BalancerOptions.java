@@ -0,0 +1,39 @@
+package org.feuyeux.ai.hello.util;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.valueOf;
+
+import java.time.Duration;
+import java.util.Locale;
+import lombok.Builder;
+import lombok.Value;
+import org.feuyeux.ai.hello.util.EndpointBalancer.Strategy;
+
+/** Tuning knobs of {@link EndpointBalancer}, read from the environment or {@code .env}. */
+@Value
+@Builder
+public class BalancerOptions {
+  /** How a call picks its endpoint. */
+  @Builder.Default Strategy strategy = Strategy.LEAST_OUTSTANDING;
+
+  /** Consecutive failures after which an endpoint is ejected. */
+  @Builder.Default int ejectAfterFailures = 3;
+
+  /** How long an ejected endpoint gets no calls while others are healthy. */
+  @Builder.Default Duration ejectDuration = Duration.ofSeconds(30);
+
+  /** Further endpoints a retryable call may try after its endpoint failed. */
+  @Builder.Default int maxRetries = 1;
+
+  public static BalancerOptions fromEnv() {
+    return BalancerOptions.builder()
+        .strategy(
+            valueOf("OLLAMA_BALANCER")
+                .map(s -> Strategy.valueOf(s.trim().toUpperCase(Locale.ROOT)))
+                .orElse(Strategy.LEAST_OUTSTANDING))
+        .ejectAfterFailures(intValueOf("OLLAMA_EJECT_AFTER_FAILURES", 3))
+        .ejectDuration(Duration.ofSeconds(intValueOf("OLLAMA_EJECT_SECONDS", 30)))
+        .maxRetries(intValueOf("OLLAMA_MAX_RETRIES", 1))
+        .build();
+  }
+}
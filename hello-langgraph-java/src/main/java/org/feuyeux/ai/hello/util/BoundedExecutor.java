@@ -0,0 +1,121 @@
+package org.feuyeux.ai.hello.util;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs blocking calls on virtual threads with at most {@code maxConcurrency} running and at most
+ * {@code maxQueued} callers waiting for a slot; further callers are rejected right away. Time spent
+ * queued counts against the caller's deadline, and a call still running at the deadline is
+ * interrupted.
+ */
+public final class BoundedExecutor {
+  private final Semaphore permits;
+  private final int maxConcurrency;
+  private final int maxQueued;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+
+  public BoundedExecutor(int maxConcurrency, int maxQueued) {
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.maxQueued = Math.max(0, maxQueued);
+    this.permits = new Semaphore(this.maxConcurrency, true);
+  }
+
+  /**
+   * @throws RejectedExecutionException if the queue is full
+   * @throws TimeoutException if no slot frees up or the call does not finish within {@code
+   *     deadline}
+   */
+  public <T> T call(Callable<T> task, Duration deadline) throws Exception {
+    long deadlineNanos = System.nanoTime() + deadline.toNanos();
+    acquire(deadline);
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Thread worker;
+    try {
+      worker =
+          Thread.ofVirtual()
+              .name("bounded-call")
+              .start(
+                  () -> {
+                    T value = null;
+                    Throwable failure = null;
+                    try {
+                      value = task.call();
+                    } catch (Throwable t) {
+                      failure = t;
+                    } finally {
+                      // Released when the call really ends, even if its caller gave up on it.
+                      permits.release();
+                    }
+                    if (failure == null) {
+                      result.complete(value);
+                    } else {
+                      result.completeExceptionally(failure);
+                    }
+                  });
+    } catch (RuntimeException | Error e) {
+      permits.release();
+      throw e;
+    }
+    try {
+      return result.get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      timedOut.incrementAndGet();
+      worker.interrupt();
+      throw new TimeoutException("Call did not finish within " + deadline);
+    } catch (InterruptedException e) {
+      worker.interrupt();
+      throw e;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  public int active() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  public int queued() {
+    return queued.get();
+  }
+
+  public long rejected() {
+    return rejected.get();
+  }
+
+  public long timedOut() {
+    return timedOut.get();
+  }
+
+  private void acquire(Duration deadline) throws InterruptedException, TimeoutException {
+    if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+      return;
+    }
+    if (queued.incrementAndGet() > maxQueued) {
+      queued.decrementAndGet();
+      rejected.incrementAndGet();
+      throw new RejectedExecutionException("Too many queued calls: " + maxQueued);
+    }
+    try {
+      if (!permits.tryAcquire(deadline.toNanos(), TimeUnit.NANOSECONDS)) {
+        timedOut.incrementAndGet();
+        throw new TimeoutException("No free slot within " + deadline);
+      }
+    } finally {
+      queued.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package org.feuyeux.ai.hello.util;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Supplier;
+
+/**
+ * Deadline and cancellation of one request. It is bound to the threads working on the request with
+ * {@link #run} and {@link #propagate}; blocking model calls made through {@link #call} or {@link
+ * #await} are interrupted when the deadline passes or the request is cancelled, which aborts their
+ * HTTP exchange, so a call never outlives the time its request has left.
+ */
+public final class Deadline {
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+  private static final ScheduledExecutorService TIMER =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "deadline-timer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final long deadlineNanos;
+  private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled;
+
+  /** Thrown by calls stopped because their request's deadline passed. */
+  public static final class ExceededException extends CancellationException {
+    ExceededException(String message, Throwable cause) {
+      super(message);
+      initCause(cause);
+    }
+  }
+
+  private Deadline(long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  public static Deadline after(Duration timeout) {
+    return new Deadline(System.nanoTime() + timeout.toNanos());
+  }
+
+  /** The deadline bound to the current thread, if it works on behalf of a request. */
+  public static Optional<Deadline> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /** Runs {@code task} on the current thread with this deadline bound to it. */
+  public <T> T run(Callable<T> task) throws Exception {
+    Deadline previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return task.call();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /** {@code task} bound to the deadline of the current thread, for running on another thread. */
+  public static <T> Callable<T> propagate(Callable<T> task) {
+    Deadline deadline = CURRENT.get();
+    return deadline == null ? task : () -> deadline.run(task);
+  }
+
+  public Duration remaining() {
+    return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+  }
+
+  public boolean expired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+
+  public boolean cancelled() {
+    return cancelled;
+  }
+
+  /** Stops the calls in flight for this request and every call it would make from now on. */
+  public void cancel() {
+    cancelled = true;
+    calls.forEach(Call::interrupt);
+  }
+
+  /**
+   * @throws CancellationException if the request was cancelled
+   * @throws ExceededException if its deadline passed
+   */
+  public void check() {
+    if (cancelled) {
+      throw new CancellationException("Request cancelled");
+    }
+    if (expired()) {
+      throw new ExceededException("Request deadline passed", null);
+    }
+  }
+
+  /**
+   * Makes a blocking call, interrupted when the deadline of the current thread passes or its
+   * request is cancelled. Without a deadline the call is made as is.
+   */
+  public static <T> T call(Supplier<T> work) {
+    Deadline deadline = CURRENT.get();
+    if (deadline == null) {
+      return work.get();
+    }
+    try {
+      return deadline.interruptibly(work::get);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Waits for {@code future} like {@link #call}; it is cancelled when the wait is stopped. */
+  public static <T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+    Deadline deadline = CURRENT.get();
+    if (deadline == null) {
+      return future.get();
+    }
+    try {
+      return deadline.interruptibly(future::get);
+    } catch (CancellationException e) {
+      future.cancel(true);
+      throw e;
+    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private <T> T interruptibly(Callable<T> work) throws Exception {
+    check();
+    Call call = new Call(Thread.currentThread());
+    calls.add(call);
+    ScheduledFuture<?> timer =
+        TIMER.schedule(call::interrupt, deadlineNanos - System.nanoTime(), NANOSECONDS);
+    try {
+      if (cancelled) {
+        call.interrupt();
+      }
+      return work.call();
+    } catch (Exception e) {
+      if (call.interrupted()) {
+        throw cancelled
+            ? (CancellationException) new CancellationException("Request cancelled").initCause(e)
+            : new ExceededException("Request deadline passed", e);
+      }
+      throw e;
+    } finally {
+      timer.cancel(false);
+      calls.remove(call);
+      if (call.finish()) {
+        // The interrupt was ours; do not leak it to the caller.
+        Thread.interrupted();
+      }
+    }
+  }
+
+  private static final class Call {
+    private final Thread thread;
+    private boolean interrupted;
+    private boolean finished;
+
+    Call(Thread thread) {
+      this.thread = thread;
+    }
+
+    synchronized void interrupt() {
+      if (!finished && !interrupted) {
+        interrupted = true;
+        thread.interrupt();
+      }
+    }
+
+    synchronized boolean interrupted() {
+      return interrupted;
+    }
+
+    synchronized boolean finish() {
+      finished = true;
+      return interrupted;
+    }
+  }
+}
@@ -42,4 +42,16 @@ public interface DotEnvConfig {
     }
     return ofNullable(value);
   }
+
+  static int intValueOf(String key, int defaultValue) {
+    return valueOf(key).map(String::trim).map(Integer::parseInt).orElse(defaultValue);
+  }
+
+  static double doubleValueOf(String key, double defaultValue) {
+    return valueOf(key).map(String::trim).map(Double::parseDouble).orElse(defaultValue);
+  }
+
+  static boolean booleanValueOf(String key, boolean defaultValue) {
+    return valueOf(key).map(String::trim).map(Boolean::parseBoolean).orElse(defaultValue);
+  }
 }
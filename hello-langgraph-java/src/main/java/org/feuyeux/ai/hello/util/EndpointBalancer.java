@@ -0,0 +1,228 @@
+package org.feuyeux.ai.hello.util;
+
+import dev.langchain4j.exception.HttpException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Client-side load balancer over equivalent model servers. A call goes to the healthy endpoint
+ * with the fewest calls outstanding, or to the less busy of two random ones. An endpoint failing
+ * {@code ejectAfterFailures} calls in a row (connection errors, timeouts, 5xx responses) is ejected
+ * for {@code ejectDuration}; a single failure after that ejects it again. When every endpoint is
+ * ejected, calls go to them anyway. Retryable calls failed by their endpoint are tried on another.
+ */
+@Slf4j
+public final class EndpointBalancer {
+  public enum Strategy {
+    LEAST_OUTSTANDING,
+    POWER_OF_TWO_CHOICES
+  }
+
+  private final List<Endpoint> endpoints;
+  private final BalancerOptions options;
+
+  @Value(staticConstructor = "of")
+  public static class EndpointStats {
+    String url;
+    int outstanding;
+    long calls;
+    long failures;
+    boolean ejected;
+  }
+
+  /** An endpoint chosen for one call; release it exactly once. */
+  public final class Lease {
+    private final Endpoint endpoint;
+
+    private Lease(Endpoint endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    public String getUrl() {
+      return endpoint.url;
+    }
+
+    public void release() {
+      finish(endpoint, null);
+    }
+
+    /** Releases after a failed call; only failures of the endpoint itself count against it. */
+    public void release(Throwable failure) {
+      finish(endpoint, failure);
+    }
+  }
+
+  private static final class Endpoint {
+    final String url;
+    int outstanding;
+    long calls;
+    long failures;
+    int consecutiveFailures;
+    long ejectedUntilNanos;
+    boolean ejected;
+
+    Endpoint(String url) {
+      this.url = url;
+    }
+
+    boolean ejected(long now) {
+      return ejected && ejectedUntilNanos - now > 0;
+    }
+  }
+
+  public EndpointBalancer(List<String> urls, BalancerOptions options) {
+    if (urls.isEmpty()) {
+      throw new IllegalArgumentException("No endpoints to balance");
+    }
+    this.endpoints = urls.stream().map(Endpoint::new).toList();
+    this.options = options;
+  }
+
+  /** Endpoints of a comma-separated list such as {@code OLLAMA_BASE_URL}. */
+  public static List<String> parse(String urls) {
+    return Arrays.stream(urls.split(",")).map(String::strip).filter(s -> !s.isEmpty()).toList();
+  }
+
+  public List<String> urls() {
+    return endpoints.stream().map(e -> e.url).toList();
+  }
+
+  /** Chooses the endpoint of a call, which the caller makes and reports on. */
+  public Lease lease() {
+    return lease(Set.of());
+  }
+
+  /**
+   * Makes {@code work} against a chosen endpoint URL. A {@code retryable} call failed by its
+   * endpoint is made again on another one, up to {@code maxRetries} times.
+   */
+  public <T> T call(boolean retryable, Function<String, T> work) {
+    int attempts = retryable ? Math.min(endpoints.size(), options.getMaxRetries() + 1) : 1;
+    Set<Endpoint> tried = new HashSet<>();
+    while (true) {
+      Lease lease = lease(tried);
+      tried.add(lease.endpoint);
+      T result;
+      try {
+        result = work.apply(lease.getUrl());
+      } catch (RuntimeException | Error e) {
+        lease.release(e);
+        if (tried.size() >= attempts || !isEndpointFailure(e)) {
+          throw e;
+        }
+        log.warn("Call to {} failed, trying another endpoint: {}", lease.getUrl(), e.toString());
+        continue;
+      }
+      lease.release();
+      return result;
+    }
+  }
+
+  public synchronized List<EndpointStats> stats() {
+    long now = System.nanoTime();
+    return endpoints.stream()
+        .map(e -> EndpointStats.of(e.url, e.outstanding, e.calls, e.failures, e.ejected(now)))
+        .toList();
+  }
+
+  private synchronized Lease lease(Set<Endpoint> tried) {
+    long now = System.nanoTime();
+    List<Endpoint> candidates = new ArrayList<>();
+    for (Endpoint endpoint : endpoints) {
+      if (!tried.contains(endpoint) && !endpoint.ejected(now)) {
+        candidates.add(endpoint);
+      }
+    }
+    if (candidates.isEmpty()) {
+      // Nothing healthy left to try: an ejected endpoint beats failing outright.
+      endpoints.stream().filter(e -> !tried.contains(e)).forEach(candidates::add);
+    }
+    if (candidates.isEmpty()) {
+      candidates.addAll(endpoints);
+    }
+    Endpoint chosen = choose(candidates);
+    chosen.outstanding++;
+    return new Lease(chosen);
+  }
+
+  private Endpoint choose(List<Endpoint> candidates) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int size = candidates.size();
+    if (options.getStrategy() == Strategy.POWER_OF_TWO_CHOICES && size > 2) {
+      int first = random.nextInt(size);
+      int second = (first + 1 + random.nextInt(size - 1)) % size;
+      Endpoint a = candidates.get(first);
+      Endpoint b = candidates.get(second);
+      return b.outstanding < a.outstanding ? b : a;
+    }
+    // Start at a random candidate so ties spread evenly.
+    int start = random.nextInt(size);
+    Endpoint best = candidates.get(start);
+    for (int i = 1; i < size; i++) {
+      Endpoint candidate = candidates.get((start + i) % size);
+      if (candidate.outstanding < best.outstanding) {
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  private synchronized void finish(Endpoint endpoint, Throwable failure) {
+    endpoint.outstanding--;
+    endpoint.calls++;
+    if (failure == null || !isEndpointFailure(failure)) {
+      // The endpoint answered, even if the call failed for another reason.
+      if (!isCancellation(failure)) {
+        endpoint.consecutiveFailures = 0;
+      }
+      return;
+    }
+    endpoint.failures++;
+    endpoint.consecutiveFailures++;
+    if (endpoint.consecutiveFailures >= options.getEjectAfterFailures()) {
+      long now = System.nanoTime();
+      if (!endpoint.ejected(now)) {
+        log.warn(
+            "Ejecting {} for {} after {} failures in a row: {}",
+            endpoint.url,
+            options.getEjectDuration(),
+            endpoint.consecutiveFailures,
+            failure.toString());
+      }
+      endpoint.ejected = true;
+      endpoint.ejectedUntilNanos = now + options.getEjectDuration().toNanos();
+    }
+  }
+
+  private static boolean isCancellation(Throwable failure) {
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof CancellationException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Whether the endpoint failed the call: it could not be reached, timed out or answered 5xx. */
+  private static boolean isEndpointFailure(Throwable failure) {
+    if (isCancellation(failure)) {
+      return false;
+    }
+    for (Throwable t = failure; t != null; t = t.getCause()) {
+      if (t instanceof IOException
+          || (t instanceof HttpException http && http.statusCode() >= 500)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,49 @@
+package org.feuyeux.ai.hello.util;
+
+import static org.feuyeux.ai.hello.util.DotEnvConfig.doubleValueOf;
+import static org.feuyeux.ai.hello.util.DotEnvConfig.intValueOf;
+
+import lombok.Builder;
+import lombok.Value;
+
+/** Tuning knobs of {@link AdaptiveLimiter}, read from the environment or {@code .env}. */
+@Value
+@Builder
+public class LimiterOptions {
+  /** Concurrency the limit never drops below. */
+  @Builder.Default int minConcurrency = 1;
+
+  /** Concurrency allowed before any call has completed. */
+  @Builder.Default int initialConcurrency = 4;
+
+  /** Concurrency the limit never grows beyond. */
+  @Builder.Default int maxConcurrency = 16;
+
+  /** A short call slower than this multiple of its call class's baseline latency is overload. */
+  @Builder.Default double latencyTolerance = 2.0;
+
+  /** Factor the limit is multiplied by on overload. */
+  @Builder.Default double backoff = 0.9;
+
+  /** Callers waiting across all lanes; further callers are rejected. */
+  @Builder.Default int maxQueued = 256;
+
+  /** Share of the limit generations may occupy, keeping slots free for short calls. */
+  @Builder.Default double generationShare = 0.75;
+
+  /** Share of the limit bulk work such as ingestion may occupy. */
+  @Builder.Default double bulkShare = 0.5;
+
+  public static LimiterOptions fromEnv() {
+    return LimiterOptions.builder()
+        .minConcurrency(intValueOf("OLLAMA_MIN_CONCURRENCY", 1))
+        .initialConcurrency(intValueOf("OLLAMA_INITIAL_CONCURRENCY", 4))
+        .maxConcurrency(intValueOf("OLLAMA_MAX_CONCURRENCY", 16))
+        .latencyTolerance(doubleValueOf("OLLAMA_LATENCY_TOLERANCE", 2.0))
+        .backoff(doubleValueOf("OLLAMA_BACKOFF", 0.9))
+        .maxQueued(intValueOf("OLLAMA_MAX_QUEUED", 256))
+        .generationShare(doubleValueOf("OLLAMA_GENERATION_SHARE", 0.75))
+        .bulkShare(doubleValueOf("OLLAMA_BULK_SHARE", 0.5))
+        .build();
+  }
+}
@@ -0,0 +1,136 @@
+package org.feuyeux.ai.hello.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import lombok.Value;
+
+/**
+ * Bounded map that evicts the least recently used entry once {@code maxEntries} is reached and
+ * drops entries older than {@code ttl} on access. Values are computed outside the lock, so two
+ * threads missing the same key at once may both compute it; the last one wins.
+ */
+public final class LruCache<K, V> {
+  private final int maxEntries;
+  private final long ttlNanos;
+  private final LongSupplier nanoClock;
+  private final LinkedHashMap<K, Timestamped<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private record Timestamped<V>(V value, long createdNanos) {}
+
+  @Value(staticConstructor = "of")
+  public static class Stats {
+    long hits;
+    long misses;
+    long evictions;
+    int size;
+
+    public double hitRate() {
+      long lookups = hits + misses;
+      return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+  }
+
+  /** A {@code ttl} of zero or less keeps entries until they are evicted by size. */
+  public LruCache(int maxEntries, Duration ttl) {
+    this(maxEntries, ttl, System::nanoTime);
+  }
+
+  public LruCache(int maxEntries, Duration ttl, LongSupplier nanoClock) {
+    this.maxEntries = maxEntries;
+    this.ttlNanos = ttl.isNegative() || ttl.isZero() ? Long.MAX_VALUE : ttl.toNanos();
+    this.nanoClock = nanoClock;
+  }
+
+  public Optional<V> get(K key) {
+    long now = nanoClock.getAsLong();
+    synchronized (entries) {
+      Timestamped<V> entry = entries.get(key);
+      if (entry != null && now - entry.createdNanos() >= ttlNanos) {
+        entries.remove(key);
+        evictions.incrementAndGet();
+        entry = null;
+      }
+      (entry == null ? misses : hits).incrementAndGet();
+      return entry == null ? Optional.empty() : Optional.of(entry.value());
+    }
+  }
+
+  public void put(K key, V value) {
+    if (maxEntries <= 0) {
+      return;
+    }
+    long now = nanoClock.getAsLong();
+    synchronized (entries) {
+      entries.put(key, new Timestamped<>(value, now));
+      Iterator<Timestamped<V>> eldest = entries.values().iterator();
+      while (entries.size() > maxEntries) {
+        eldest.next();
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /** Returns the cached value for {@code key}, computing and caching it on a miss. */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> compute) {
+    Optional<V> cached = get(key);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    V value = compute.apply(key);
+    if (value != null) {
+      put(key, value);
+    }
+    return value;
+  }
+
+  public void remove(K key) {
+    synchronized (entries) {
+      entries.remove(key);
+    }
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * Copies the live entries, from least to most recently used, without counting hits, so callers
+   * can scan them without holding the lock.
+   */
+  public List<Map.Entry<K, V>> snapshot() {
+    long now = nanoClock.getAsLong();
+    synchronized (entries) {
+      List<Map.Entry<K, V>> live = new ArrayList<>(entries.size());
+      for (Map.Entry<K, Timestamped<V>> entry : entries.entrySet()) {
+        if (now - entry.getValue().createdNanos() < ttlNanos) {
+          live.add(Map.entry(entry.getKey(), entry.getValue().value()));
+        }
+      }
+      return live;
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public Stats stats() {
+    return Stats.of(hits.get(), misses.get(), evictions.get(), size());
+  }
+}
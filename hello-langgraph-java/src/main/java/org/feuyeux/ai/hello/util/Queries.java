@@ -0,0 +1,17 @@
+package org.feuyeux.ai.hello.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public final class Queries {
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private Queries() {}
+
+  /** Cache key of a query: case, Unicode form and whitespace differences do not change it. */
+  public static String normalize(String query) {
+    String normalized = Normalizer.normalize(query, Normalizer.Form.NFKC);
+    return WHITESPACE.matcher(normalized.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,90 @@
+package org.feuyeux.ai.hello.util;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller (the leader) runs the call on its
+ * own thread, callers arriving while it is in flight (followers) wait for and share its result or
+ * failure. A leader stopped by a {@link CancellationException}, such as its own request running
+ * out of time, says nothing about the call itself: its followers then try again, and one of them
+ * leads the next run. Nothing is kept once the call completes.
+ */
+public final class SingleFlight<K, V> {
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong leaders = new AtomicLong();
+  private final AtomicLong followers = new AtomicLong();
+
+  public V call(K key, Callable<V> call) throws Exception {
+    return call(key, call, null);
+  }
+
+  /**
+   * Runs {@code call} unless an identical one is in flight. A follower gives up with a {@link
+   * TimeoutException} after {@code followerTimeout} ({@code null} waits indefinitely), without
+   * affecting the leader. Waiting on the next leader after a cancelled one counts against the same
+   * timeout.
+   */
+  public V call(K key, Callable<V> call, Duration followerTimeout) throws Exception {
+    long start = System.nanoTime();
+    CompletableFuture<V> own = new CompletableFuture<>();
+    CompletableFuture<V> leader = inFlight.putIfAbsent(key, own);
+    if (leader != null) {
+      followers.incrementAndGet();
+    }
+    while (leader != null) {
+      Duration timeout =
+          followerTimeout == null ? null : followerTimeout.minusNanos(System.nanoTime() - start);
+      try {
+        return await(leader, timeout);
+      } catch (CancellationException e) {
+        // The leader's request was cancelled or out of time; take over if no one else has.
+        inFlight.remove(key, leader);
+        leader = inFlight.putIfAbsent(key, own);
+      }
+    }
+    leaders.incrementAndGet();
+    try {
+      V value = call.call();
+      own.complete(value);
+      return value;
+    } catch (Throwable t) {
+      own.completeExceptionally(t);
+      throw t;
+    } finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  public int inFlight() {
+    return inFlight.size();
+  }
+
+  public long leaders() {
+    return leaders.get();
+  }
+
+  public long followers() {
+    return followers.get();
+  }
+
+  private static <V> V await(CompletableFuture<V> leader, Duration timeout) throws Exception {
+    try {
+      return timeout == null
+          ? leader.get()
+          : leader.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+}
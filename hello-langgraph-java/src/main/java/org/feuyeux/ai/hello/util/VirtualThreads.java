@@ -0,0 +1,90 @@
+package org.feuyeux.ai.hello.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public final class VirtualThreads {
+
+  private VirtualThreads() {}
+
+  /**
+   * Applies {@code fn} to every item on virtual threads, with at most {@code parallelism} calls in
+   * flight. Each call gets {@code timeout} once it starts running; calls that time out or fail are
+   * reported as empty. Calls run under the caller's {@link Deadline}.
+   *
+   * @throws CancellationException if a call was cancelled, e.g. by the deadline, or the caller is
+   *     interrupted; the remaining calls are cancelled
+   * @throws RejectedExecutionException if a call was rejected by an overloaded limiter
+   *
+   * @return one result per item, in the order of {@code items}
+   */
+  public static <T, R> List<Optional<R>> mapOrdered(
+      List<T> items, Function<T, R> fn, int parallelism, Duration timeout) {
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    try {
+      Semaphore permits = new Semaphore(Math.max(1, parallelism));
+      List<Future<R>> futures = new ArrayList<>(items.size());
+      for (T item : items) {
+        futures.add(
+            executor.submit(
+                Deadline.propagate(
+                    () -> {
+                      permits.acquire();
+                      try {
+                        Future<R> call =
+                            executor.submit(Deadline.propagate(() -> fn.apply(item)));
+                        try {
+                          return call.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException e) {
+                          call.cancel(true);
+                          throw e;
+                        }
+                      } finally {
+                        permits.release();
+                      }
+                    })));
+      }
+      List<Optional<R>> results = new ArrayList<>(items.size());
+      for (Future<R> future : futures) {
+        results.add(await(future));
+      }
+      return results;
+    } finally {
+      // Do not wait for timed-out calls that ignore interruption.
+      executor.shutdownNow();
+    }
+  }
+
+  private static <R> Optional<R> await(Future<R> future) {
+    try {
+      return Optional.ofNullable(future.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (CancellationException) new CancellationException("Interrupted").initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ExecutionException inner) {
+        cause = inner.getCause();
+      }
+      if (cause instanceof CancellationException || cause instanceof RejectedExecutionException) {
+        throw (RuntimeException) cause;
+      }
+      log.warn("Parallel call failed: {}", String.valueOf(cause));
+      return Optional.empty();
+    }
+  }
+}
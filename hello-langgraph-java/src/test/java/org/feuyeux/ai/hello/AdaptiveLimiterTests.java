@@ -0,0 +1,152 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter.Lane;
+import org.feuyeux.ai.hello.util.LimiterOptions;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveLimiterTests {
+
+  private static LimiterOptions.LimiterOptionsBuilder fixed(int concurrency, int maxQueued) {
+    return LimiterOptions.builder()
+        .minConcurrency(concurrency)
+        .initialConcurrency(concurrency)
+        .maxConcurrency(concurrency)
+        .maxQueued(maxQueued);
+  }
+
+  private static void awaitQueued(AdaptiveLimiter limiter, Lane lane, int queued)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (limiter.stats().getLanes().get(lane).getQueued() < queued) {
+      assertTrue(System.nanoTime() < deadline, "waiter did not queue");
+      Thread.sleep(5);
+    }
+  }
+
+  @Test
+  public void testFreeSlotGoesToHigherPriorityLane() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(fixed(1, 8).build());
+    List<Lane> order = new CopyOnWriteArrayList<>();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      AdaptiveLimiter.Permit held = limiter.acquire(Lane.BULK);
+      Future<?> generation =
+          executor.submit(() -> limiter.call(Lane.GENERATION, () -> order.add(Lane.GENERATION)));
+      awaitQueued(limiter, Lane.GENERATION, 1);
+      Future<?> grading =
+          executor.submit(() -> limiter.call(Lane.GRADING, () -> order.add(Lane.GRADING)));
+      awaitQueued(limiter, Lane.GRADING, 1);
+
+      held.release();
+      grading.get(10, TimeUnit.SECONDS);
+      generation.get(10, TimeUnit.SECONDS);
+
+      assertEquals(List.of(Lane.GRADING, Lane.GENERATION), order);
+      assertTrue(limiter.stats().getLanes().get(Lane.GRADING).getMaxQueueMillis() > 0);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testGenerationsLeaveSlotsForShortCalls() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(fixed(4, 8).generationShare(0.5).build());
+    AdaptiveLimiter.Permit first = limiter.acquire(Lane.GENERATION);
+    AdaptiveLimiter.Permit second = limiter.acquire(Lane.GENERATION);
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<String> third = executor.submit(() -> limiter.call(Lane.GENERATION, () -> "third"));
+      awaitQueued(limiter, Lane.GENERATION, 1);
+
+      assertEquals("graded", limiter.call(Lane.GRADING, () -> "graded"));
+      assertEquals(2, limiter.stats().getLanes().get(Lane.GENERATION).getInFlight());
+
+      first.release();
+      assertEquals("third", third.get(10, TimeUnit.SECONDS));
+      second.release();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRejectsWhenQueueIsFull() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(fixed(1, 0).build());
+    AdaptiveLimiter.Permit held = limiter.acquire(Lane.GRADING);
+
+    assertThrows(RejectedExecutionException.class, () -> limiter.acquire(Lane.GRADING));
+    assertEquals(1, limiter.stats().getLanes().get(Lane.GRADING).getRejected());
+    held.release();
+  }
+
+  @Test
+  public void testLimitGrowsUnderLoadAndBacksOffOnTimeout() throws Exception {
+    AdaptiveLimiter limiter =
+        new AdaptiveLimiter(
+            LimiterOptions.builder()
+                .minConcurrency(1)
+                .initialConcurrency(2)
+                .maxConcurrency(8)
+                // Only timeouts count here, not scheduling jitter of instant calls.
+                .latencyTolerance(1e6)
+                .backoff(0.5)
+                .build());
+    for (int i = 0; i < 20; i++) {
+      AdaptiveLimiter.Permit a = limiter.acquire(Lane.GENERATION);
+      AdaptiveLimiter.Permit b = limiter.acquire(Lane.GRADING);
+      a.release();
+      b.release();
+    }
+    int grown = limiter.stats().getLimit();
+    assertTrue(grown > 2, "limit " + grown);
+
+    AdaptiveLimiter.Permit late = limiter.acquire(Lane.GENERATION);
+    late.release(new IllegalStateException(new SocketTimeoutException("read timed out")));
+    assertTrue(limiter.stats().getLimit() < grown);
+  }
+
+  @Test
+  public void testSlowCallClassIsNotOverloadForFastOne() throws Exception {
+    AdaptiveLimiter limiter =
+        new AdaptiveLimiter(
+            LimiterOptions.builder()
+                .minConcurrency(1)
+                .initialConcurrency(4)
+                .maxConcurrency(4)
+                .latencyTolerance(2.0)
+                .backoff(0.5)
+                .build());
+    for (int i = 0; i < 3; i++) {
+      limiter.call(Lane.GRADING, "ANSWER_GRADER/Service", () -> sleep(20));
+      // Ten times the single call, but as usual for a batch of eight.
+      limiter.call(Lane.GRADING, "RETRIEVAL_GRADER/BatchServicex8", () -> sleep(200));
+    }
+
+    AdaptiveLimiter.Stats stats = limiter.stats();
+    assertEquals(4, stats.getLimit());
+    assertEquals(2, stats.getBaselineMillis().size());
+    assertTrue(stats.getBaselineMillis().get("RETRIEVAL_GRADER/BatchServicex8") >= 200);
+  }
+
+  private static Void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+}
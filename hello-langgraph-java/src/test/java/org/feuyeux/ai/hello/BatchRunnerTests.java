@@ -0,0 +1,84 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.feuyeux.ai.hello.fun.QuestionRouterEdgeFn;
+import org.feuyeux.ai.hello.service.BatchOptions;
+import org.feuyeux.ai.hello.service.BatchRunner;
+import org.junit.jupiter.api.Test;
+
+public class BatchRunnerTests {
+
+  @Test
+  public void testRoutesInBatchesAndWritesEveryAnswer() throws Exception {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 70; i++) {
+      String json = "{\"id\": \"q" + i + "\", \"question\": \"agent " + i + "\"}";
+      input.append(i % 2 == 0 ? json : "news " + i);
+      input.append(i % 10 == 0 ? "\n\n" : "\n");
+    }
+    List<Integer> routeBatches = new ArrayList<>();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    BatchRunner runner =
+        new BatchRunner(
+            questions -> {
+              routeBatches.add(questions.size());
+              return questions.stream()
+                  .map(
+                      q ->
+                          q.startsWith("agent")
+                              ? QuestionRouterEdgeFn.Type.vectorstore
+                              : QuestionRouterEdgeFn.Type.web_search)
+                  .toList();
+            },
+            (question, route) -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              try {
+                Thread.sleep(2);
+                if (question.equals("news 13")) {
+                  throw new IllegalStateException("ollama unavailable");
+                }
+                return route + ": " + question;
+              } finally {
+                running.decrementAndGet();
+              }
+            },
+            BatchOptions.builder().parallelism(4).routeBatchSize(32).build());
+
+    StringWriter output = new StringWriter();
+    BatchRunner.Report report =
+        runner.run(new BufferedReader(new StringReader(input.toString())), output);
+
+    assertEquals(List.of(32, 32, 6), routeBatches);
+    assertEquals(70, report.getQuestions());
+    assertEquals(1, report.getFailed());
+    assertEquals(3, report.getRouteCalls());
+    assertTrue(maxRunning.get() <= 4);
+
+    ObjectMapper json = new ObjectMapper();
+    Map<String, JsonNode> answers = new HashMap<>();
+    for (String line : output.toString().split("\n")) {
+      JsonNode answer = json.readTree(line);
+      answers.put(answer.get("question").asText(), answer);
+    }
+    assertEquals(70, answers.size());
+    assertEquals("q0", answers.get("agent 0").get("id").asText());
+    assertEquals("vectorstore: agent 0", answers.get("agent 0").get("generation").asText());
+    // Plain lines are identified by their line number; line 2 is blank.
+    assertEquals("3", answers.get("news 1").get("id").asText());
+    assertEquals("web_search", answers.get("news 1").get("route").asText());
+    assertTrue(answers.get("news 13").get("error").asText().contains("ollama unavailable"));
+  }
+}
@@ -0,0 +1,77 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.feuyeux.ai.hello.util.BoundedExecutor;
+import org.junit.jupiter.api.Test;
+
+public class BoundedExecutorTests {
+  private static final Duration LONG = Duration.ofSeconds(10);
+
+  @Test
+  public void testRejectsBeyondQueueDepth() throws Exception {
+    BoundedExecutor executor = new BoundedExecutor(1, 1);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+    try {
+      Future<String> first =
+          callers.submit(
+              () ->
+                  executor.call(
+                      () -> {
+                        running.countDown();
+                        release.await();
+                        return "first";
+                      },
+                      LONG));
+      assertTrue(running.await(10, TimeUnit.SECONDS));
+      Future<String> queued = callers.submit(() -> executor.call(() -> "queued", LONG));
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (executor.queued() < 1 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+
+      assertThrows(RejectedExecutionException.class, () -> executor.call(() -> "third", LONG));
+      assertEquals(1, executor.rejected());
+
+      release.countDown();
+      assertEquals("first", first.get(10, TimeUnit.SECONDS));
+      assertEquals("queued", queued.get(10, TimeUnit.SECONDS));
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDeadlineInterruptsRunningCall() throws Exception {
+    BoundedExecutor executor = new BoundedExecutor(1, 1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    assertThrows(
+        TimeoutException.class,
+        () ->
+            executor.call(
+                () -> {
+                  try {
+                    Thread.sleep(Duration.ofSeconds(30));
+                  } catch (InterruptedException e) {
+                    interrupted.countDown();
+                  }
+                  return "late";
+                },
+                Duration.ofMillis(50)));
+    assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    assertEquals("next", executor.call(() -> "next", LONG));
+    assertEquals(0, executor.active());
+  }
+}
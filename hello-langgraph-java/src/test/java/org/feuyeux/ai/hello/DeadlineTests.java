@@ -0,0 +1,85 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.junit.jupiter.api.Test;
+
+public class DeadlineTests {
+
+  /** Stands in for a model call: blocks until interrupted, like an HTTP exchange. */
+  private static String block(CountDownLatch started) {
+    started.countDown();
+    try {
+      Thread.sleep(60_000);
+      return "late answer";
+    } catch (InterruptedException e) {
+      throw new IllegalStateException("call aborted", e);
+    }
+  }
+
+  @Test
+  public void testCallIsInterruptedAtDeadline() throws Exception {
+    Deadline deadline = Deadline.after(Duration.ofMillis(50));
+    long start = System.nanoTime();
+
+    assertThrows(
+        Deadline.ExceededException.class,
+        () -> deadline.run(() -> Deadline.call(() -> block(new CountDownLatch(1)))));
+
+    assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+    assertFalse(Thread.currentThread().isInterrupted());
+    assertThrows(Deadline.ExceededException.class, deadline::check);
+  }
+
+  @Test
+  public void testCancelStopsCallOnAnotherThread() throws Exception {
+    Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+    CountDownLatch started = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> run =
+          executor.submit(() -> deadline.run(() -> Deadline.call(() -> block(started))));
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+
+      deadline.cancel();
+
+      Exception e = assertThrows(Exception.class, () -> run.get(10, TimeUnit.SECONDS));
+      assertEquals(CancellationException.class, e.getCause().getClass());
+      assertThrows(CancellationException.class, deadline::check);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDeadlinePropagatesToOtherThreads() throws Exception {
+    Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Optional<Deadline>> bound =
+          deadline.run(() -> executor.submit(Deadline.propagate(Deadline::current)));
+      assertEquals(Optional.of(deadline), bound.get());
+      assertEquals(Optional.empty(), executor.submit(Deadline::current).get());
+      assertEquals(Optional.empty(), Deadline.current());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCallWithoutDeadlineRunsAsIs() {
+    assertEquals("answer", Deadline.call(() -> "answer"));
+  }
+}
@@ -0,0 +1,112 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import dev.langchain4j.data.embedding.Embedding;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.feuyeux.ai.hello.fun.EmbeddingRouterEdgeFn;
+import org.feuyeux.ai.hello.fun.QuestionRouterEdgeFn.Type;
+import org.junit.jupiter.api.Test;
+
+public class EmbeddingRouterEdgeFnTests {
+  // Two-dimensional fake embeddings: x leans to the corpus, y to the web.
+  private static final Map<String, float[]> VECTORS =
+      Map.of(
+          "agent memory", new float[] {1, 0},
+          "prompt design", new float[] {0.9f, 0.1f},
+          "weather today", new float[] {0, 1},
+          "football scores", new float[] {0.1f, 0.9f},
+          "agent news", new float[] {0.7f, 0.7f},
+          "agent planning", new float[] {0.95f, 0.05f});
+
+  private static final Function<String, Embedding> EMBEDDER =
+      text -> Embedding.from(VECTORS.get(text));
+
+  private static Map<String, Type> examples() {
+    Map<String, Type> examples = new LinkedHashMap<>();
+    examples.put("agent memory", Type.vectorstore);
+    examples.put("prompt design", Type.vectorstore);
+    examples.put("weather today", Type.web_search);
+    examples.put("football scores", Type.web_search);
+    return examples;
+  }
+
+  @Test
+  public void testAmbiguousQuestionsFallBackToLlm() {
+    AtomicInteger llmCalls = new AtomicInteger();
+    EmbeddingRouterEdgeFn router =
+        new EmbeddingRouterEdgeFn(
+            EMBEDDER,
+            question -> {
+              llmCalls.incrementAndGet();
+              return Type.web_search;
+            },
+            examples(),
+            null,
+            0.1);
+
+    assertEquals(Optional.of(Type.vectorstore), router.classify("agent planning"));
+    assertEquals(Optional.empty(), router.classify("agent news"));
+
+    assertEquals(Type.vectorstore, router.apply("agent planning"));
+    assertEquals(Type.web_search, router.apply("weather today"));
+    assertEquals(Type.web_search, router.apply("agent news"));
+    assertEquals(1, llmCalls.get());
+    assertEquals(3, router.stats().getDecisions());
+    assertEquals(1.0 / 3, router.stats().fallbackRate(), 1e-9);
+  }
+
+  @Test
+  public void testCorpusCentroidStandsInForVectorstoreExamples() {
+    Map<String, Type> webOnly = Map.of("weather today", Type.web_search);
+    EmbeddingRouterEdgeFn withoutCorpus =
+        new EmbeddingRouterEdgeFn(EMBEDDER, question -> Type.web_search, webOnly, null, 0.1);
+    EmbeddingRouterEdgeFn withCorpus =
+        new EmbeddingRouterEdgeFn(
+            EMBEDDER, question -> Type.web_search, webOnly, new float[] {2, 0}, 0.1);
+
+    assertEquals(Optional.empty(), withoutCorpus.classify("agent planning"));
+    assertEquals(Optional.of(Type.vectorstore), withCorpus.classify("agent planning"));
+    assertEquals(Optional.of(Type.web_search), withCorpus.classify("football scores"));
+  }
+
+  @Test
+  public void testCorpusCentroidIsReplacedAfterIngestion() {
+    Map<String, Type> webOnly = Map.of("weather today", Type.web_search);
+    EmbeddingRouterEdgeFn router =
+        new EmbeddingRouterEdgeFn(EMBEDDER, question -> Type.web_search, webOnly, null, 0.1);
+
+    assertEquals(
+        EmbeddingRouterEdgeFn.Decision.of(Type.web_search, true),
+        router.decide("agent planning"));
+    router.setCorpusCentroid(new float[] {2, 0});
+    assertEquals(
+        EmbeddingRouterEdgeFn.Decision.of(Type.vectorstore, false),
+        router.decide("agent planning"));
+    router.setCorpusCentroid(null);
+    assertEquals(Optional.empty(), router.classify("agent planning"));
+  }
+
+  @Test
+  public void testEvaluateAgainstLabels() {
+    EmbeddingRouterEdgeFn router =
+        new EmbeddingRouterEdgeFn(EMBEDDER, question -> Type.vectorstore, examples(), null, 0.1);
+    Map<String, Type> labelled = new LinkedHashMap<>();
+    labelled.put("agent planning", Type.vectorstore);
+    labelled.put("football scores", Type.web_search);
+    labelled.put("agent news", Type.web_search);
+
+    EmbeddingRouterEdgeFn.Evaluation evaluation = router.evaluate(labelled);
+
+    assertEquals(3, evaluation.getQuestions());
+    assertEquals(2, evaluation.getConfident());
+    assertEquals(0.5, evaluation.getAgreement(), 1e-9);
+    assertEquals(2.0 / 3, evaluation.getAccuracy(), 1e-9);
+    assertEquals(1.0 / 3, evaluation.fallbackRate(), 1e-9);
+    assertEquals(0, router.stats().getDecisions());
+  }
+}
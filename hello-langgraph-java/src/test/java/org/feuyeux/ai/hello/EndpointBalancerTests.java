@@ -0,0 +1,204 @@
+package org.feuyeux.ai.hello;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.exception.HttpException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.feuyeux.ai.hello.util.BalancerOptions;
+import org.feuyeux.ai.hello.util.EndpointBalancer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Balances calls across stub Ollama servers on local ports. */
+public class EndpointBalancerTests {
+  private final HttpClient client =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+  private final List<HttpServer> servers = new ArrayList<>();
+
+  @AfterEach
+  public void stopServers() {
+    servers.forEach(server -> server.stop(0));
+  }
+
+  /** A server answering every request with {@code status} and {@code body}. */
+  private String stub(int status, String body) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          byte[] bytes = body.getBytes(UTF_8);
+          exchange.sendResponseHeaders(status, bytes.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+          }
+        });
+    server.start();
+    servers.add(server);
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /** A URL nothing listens on any more, so connections are refused or time out. */
+  private String dead() throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    String url = "http://127.0.0.1:" + server.getAddress().getPort();
+    server.stop(0);
+    return url;
+  }
+
+  /** Calls {@code /api/tags} like a model client: 5xx and I/O errors become exceptions. */
+  private String get(String baseUrl) {
+    try {
+      HttpResponse<String> response =
+          client.send(
+              HttpRequest.newBuilder(URI.create(baseUrl + "/api/tags"))
+                  .timeout(Duration.ofSeconds(5))
+                  .build(),
+              HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() >= 500) {
+        throw new HttpException(response.statusCode(), response.body());
+      }
+      return response.body();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("interrupted");
+    }
+  }
+
+  private static EndpointBalancer.EndpointStats stats(EndpointBalancer balancer, String url) {
+    return balancer.stats().stream().filter(s -> s.getUrl().equals(url)).findFirst().orElseThrow();
+  }
+
+  private static long calls(EndpointBalancer balancer) {
+    return balancer.stats().stream().mapToLong(EndpointBalancer.EndpointStats::getCalls).sum();
+  }
+
+  @Test
+  public void testCallGoesToLeastBusyEndpoint() throws Exception {
+    String a = stub(200, "a");
+    String b = stub(200, "b");
+    EndpointBalancer balancer =
+        new EndpointBalancer(
+            EndpointBalancer.parse(a + ", " + b), BalancerOptions.builder().build());
+
+    EndpointBalancer.Lease busy = balancer.lease();
+    String answer = balancer.call(false, this::get);
+    busy.release();
+
+    assertEquals(busy.getUrl().equals(a) ? "b" : "a", answer);
+  }
+
+  @Test
+  public void testPowerOfTwoChoicesAvoidsBusyEndpoint() throws Exception {
+    List<String> urls = List.of(stub(200, "a"), stub(200, "b"), stub(200, "c"));
+    BalancerOptions options =
+        BalancerOptions.builder().strategy(EndpointBalancer.Strategy.POWER_OF_TWO_CHOICES).build();
+    EndpointBalancer balancer = new EndpointBalancer(urls, options);
+    List<EndpointBalancer.Lease> held = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      held.add(balancer.lease());
+    }
+    // Five calls held over three endpoints: p2c never stacks all of them on one.
+    long distinct = held.stream().map(EndpointBalancer.Lease::getUrl).distinct().count();
+    held.forEach(EndpointBalancer.Lease::release);
+
+    assertTrue(distinct >= 2);
+  }
+
+  @Test
+  public void testRetriesOnAnotherEndpointAndEjectsDeadOne() throws Exception {
+    String live = stub(200, "live");
+    String dead = dead();
+    EndpointBalancer balancer =
+        new EndpointBalancer(
+            List.of(dead, live),
+            BalancerOptions.builder().ejectAfterFailures(1).maxRetries(1).build());
+
+    // Ties are broken at random, so some early call picks the dead endpoint first.
+    for (int i = 0; i < 30; i++) {
+      assertEquals("live", balancer.call(true, this::get));
+    }
+
+    EndpointBalancer.EndpointStats deadStats = stats(balancer, dead);
+    assertTrue(deadStats.isEjected());
+    // Ejected after its first failure, it got no further calls.
+    assertEquals(1, deadStats.getCalls());
+    assertEquals(30, stats(balancer, live).getCalls());
+  }
+
+  @Test
+  public void testGenerationIsNotRetried() throws Exception {
+    EndpointBalancer balancer =
+        new EndpointBalancer(
+            List.of(stub(503, "overloaded"), stub(503, "overloaded")),
+            BalancerOptions.builder().ejectAfterFailures(2).build());
+
+    HttpException e = assertThrows(HttpException.class, () -> balancer.call(false, this::get));
+    assertEquals(503, e.statusCode());
+    assertEquals(1, calls(balancer));
+  }
+
+  @Test
+  public void testEjectedEndpointsStillServeWhenNothingElseIsLeft() throws Exception {
+    String url = stub(503, "overloaded");
+    EndpointBalancer balancer =
+        new EndpointBalancer(List.of(url), BalancerOptions.builder().ejectAfterFailures(1).build());
+
+    assertThrows(HttpException.class, () -> balancer.call(true, this::get));
+    assertTrue(stats(balancer, url).isEjected());
+    assertThrows(HttpException.class, () -> balancer.call(true, this::get));
+    assertEquals(2, stats(balancer, url).getCalls());
+  }
+
+  @Test
+  public void testCancellationAndBadAnswersDoNotEject() throws Exception {
+    EndpointBalancer balancer =
+        new EndpointBalancer(
+            List.of(stub(200, "not json"), stub(200, "not json")),
+            BalancerOptions.builder().ejectAfterFailures(1).build());
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(
+        CancellationException.class,
+        () ->
+            balancer.call(
+                true,
+                u -> {
+                  attempts.incrementAndGet();
+                  throw new CancellationException("request cancelled");
+                }));
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            balancer.call(
+                true,
+                u -> {
+                  attempts.incrementAndGet();
+                  throw new IllegalStateException("cannot parse " + get(u));
+                }));
+
+    // Neither was the endpoint's fault, so neither was retried.
+    assertEquals(2, attempts.get());
+    assertEquals(2, calls(balancer));
+    balancer.stats().forEach(s -> assertFalse(s.isEjected()));
+    balancer.stats().forEach(s -> assertEquals(0, s.getFailures()));
+  }
+}
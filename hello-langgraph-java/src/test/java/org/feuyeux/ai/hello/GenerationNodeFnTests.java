@@ -0,0 +1,71 @@
+package org.feuyeux.ai.hello;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.feuyeux.ai.hello.fun.GenerationNodeFn;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Streams from a stub Ollama server that never finishes its answer. */
+public class GenerationNodeFnTests {
+  private HttpServer server;
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testMissedDeadlineCancelsTheStream() throws Exception {
+    CountDownLatch disconnected = new CountDownLatch(1);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/api/chat",
+        exchange -> {
+          exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+          exchange.sendResponseHeaders(200, 0);
+          try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < 200; i++) {
+              out.write(
+                  ("{\"model\":\"qwen2.5\",\"message\":{\"role\":\"assistant\",\"content\":\"t"
+                          + i
+                          + " \"},\"done\":false}\n")
+                      .getBytes(UTF_8));
+              out.flush();
+              Thread.sleep(50);
+            }
+          } catch (IOException e) {
+            disconnected.countDown();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    server.start();
+    String url = "http://127.0.0.1:" + server.getAddress().getPort();
+    ModelRegistry registry = new ModelRegistry();
+    GenerationNodeFn generator = GenerationNodeFn.of(registry, url);
+
+    assertThrows(
+        Deadline.ExceededException.class,
+        () ->
+            Deadline.after(Duration.ofMillis(500))
+                .run(() -> generator.stream("question", List.of("context"), token -> {})));
+
+    // The client closed the stream instead of reading it to the end.
+    assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+    assertEquals(0, registry.limiterStats().get(url).getInFlight());
+  }
+}
@@ -15,6 +15,7 @@ import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.bsc.langgraph4j.GraphRepresentation;
@@ -22,6 +23,8 @@ import org.bsc.langgraph4j.StateGraph;
 import org.feuyeux.ai.hello.fun.*;
 import org.feuyeux.ai.hello.graph.AdaptiveRagGraph;
 import org.feuyeux.ai.hello.repository.HelloEmbeddingStore;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.SearchOptions;
 import org.feuyeux.ai.hello.service.LanggraphService;
 import org.feuyeux.ai.hello.util.DotEnvConfig;
 import org.junit.jupiter.api.BeforeAll;
@@ -36,6 +39,7 @@ class HelloLanggraphTests {
   private String question = "What is prompt engineering?";
   @Autowired private HelloEmbeddingStore helloEmbeddingStore;
   @Autowired private LanggraphService langgraphService;
+  @Autowired private ModelRegistry modelRegistry;
 
   @BeforeAll
   public static void beforeAll() throws Exception {
@@ -74,11 +78,20 @@ class HelloLanggraphTests {
     }
   }
 
+  @Test
+  public void testGraphStream() throws Exception {
+    StringBuffer tokens = new StringBuffer();
+    List<String> nodes = new CopyOnWriteArrayList<>();
+    String result = langgraphService.stream(question, tokens::append, nodes::add);
+    log.info("[Question]:\n{} \n[Nodes]:{}\n[Streamed result]:{}", question, nodes, result);
+    assertTrue(tokens.toString().endsWith(result));
+  }
+
   // ----
 
   @Test
   public void testQuestionRouter() {
-    QuestionRouterEdgeFn qr = QuestionRouterEdgeFn.of(getOllamaBaseUrl());
+    QuestionRouterEdgeFn qr = QuestionRouterEdgeFn.of(modelRegistry, getOllamaBaseUrl());
     QuestionRouterEdgeFn.Type result = qr.apply("What are the stock options?");
     assertEquals(QuestionRouterEdgeFn.Type.web_search, result);
 
@@ -106,9 +119,10 @@ class HelloLanggraphTests {
 
   @Test
   public void testRetrievalGrader() {
-    RetrievalGraderNodeFn grader = RetrievalGraderNodeFn.of(getOllamaBaseUrl());
+    RetrievalGraderNodeFn grader = RetrievalGraderNodeFn.of(modelRegistry, getOllamaBaseUrl());
     // retrieve
-    EmbeddingSearchResult<TextSegment> relevant = helloEmbeddingStore.search(question);
+    EmbeddingSearchResult<TextSegment> relevant =
+        helloEmbeddingStore.search(question, SearchOptions.builder().maxResults(1).build());
     List<EmbeddingMatch<TextSegment>> matches = relevant.matches();
     assertEquals(1, matches.size());
     String document = matches.getFirst().embedded().text();
@@ -128,14 +142,15 @@ class HelloLanggraphTests {
     EmbeddingSearchResult<TextSegment> relevantDocs = helloEmbeddingStore.search(question);
     List<String> docs =
         relevantDocs.matches().stream().map(m -> m.embedded().text()).collect(Collectors.toList());
-    GenerationNodeFn qr = GenerationNodeFn.of(getOllamaBaseUrl());
+    GenerationNodeFn qr = GenerationNodeFn.of(modelRegistry, getOllamaBaseUrl());
     String result = qr.apply(question, docs);
     log.info("\n[Question]:\n{}\n[Generation result]:\n{}", question, result);
   }
 
   @Test
   public void testQuestionRewriter() {
-    QuestionRewriterNodeFn questionRewriterNodeFn = QuestionRewriterNodeFn.of(getOllamaBaseUrl());
+    QuestionRewriterNodeFn questionRewriterNodeFn =
+        QuestionRewriterNodeFn.of(modelRegistry, getOllamaBaseUrl());
     String result = questionRewriterNodeFn.apply(question);
     log.info("\n[Question]:\n{}\n[QuestionRewriter result]:\n{}", question, result);
   }
@@ -143,7 +158,8 @@ class HelloLanggraphTests {
   @Test
   public void testGraphing() throws Exception {
     AdaptiveRagGraph adaptiveRagGraph =
-        new AdaptiveRagGraph(getOllamaBaseUrl(), getTavilyApiKey(), helloEmbeddingStore);
+        new AdaptiveRagGraph(
+            getOllamaBaseUrl(), getTavilyApiKey(), helloEmbeddingStore, modelRegistry);
     StateGraph<AdaptiveRagGraph.State> graph = adaptiveRagGraph.buildGraph();
 
     GraphRepresentation plantUml = graph.getGraph(PLANTUML, "Adaptive RAG");
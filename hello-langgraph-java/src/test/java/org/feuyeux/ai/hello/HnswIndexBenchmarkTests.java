@@ -0,0 +1,158 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.repository.store.HnswIndex;
+import org.feuyeux.ai.hello.repository.store.HnswOptions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Recall and latency of {@link HnswIndex} against an exact scan on a synthetic, clustered corpus of
+ * unit vectors. The corpus size defaults to 10k so the test suite stays fast; run the full size
+ * with {@code -Dhnsw.benchmark.size=1000000}.
+ */
+@Slf4j
+public class HnswIndexBenchmarkTests {
+  private static final int SIZE = Integer.getInteger("hnsw.benchmark.size", 10_000);
+  private static final int DIMENSION = Integer.getInteger("hnsw.benchmark.dimension", 64);
+  private static final int CLUSTERS = 100;
+  private static final int QUERIES = 100;
+  private static final int K = 10;
+
+  // mvn test -Dtest=org.feuyeux.ai.hello.HnswIndexBenchmarkTests -Dhnsw.benchmark.size=1000000
+  @Test
+  public void testRecallVersusLatency() throws Exception {
+    Random random = new Random(42);
+    float[][] corpus = clusteredVectors(random);
+    ArrayVectors vectors = new ArrayVectors(corpus);
+    HnswOptions options = HnswOptions.builder().build();
+    HnswIndex index = new HnswIndex(vectors, options);
+
+    int[] nodes = new int[SIZE];
+    Arrays.setAll(nodes, i -> i);
+    long start = System.nanoTime();
+    index.insertAll(nodes, options.getBuildParallelism());
+    log.info(
+        "[hnsw] built {} x {}d in {} ms (M={}, efConstruction={}, threads={})",
+        SIZE,
+        DIMENSION,
+        (System.nanoTime() - start) / 1_000_000,
+        options.getM(),
+        options.getEfConstruction(),
+        options.getBuildParallelism());
+    assertEquals(SIZE, index.size());
+
+    float[][] queries = new float[QUERIES][];
+    List<Set<Integer>> truth = new ArrayList<>();
+    long exactNanos = 0;
+    for (int q = 0; q < QUERIES; q++) {
+      queries[q] = perturb(corpus[random.nextInt(SIZE)], random);
+      start = System.nanoTime();
+      truth.add(exactTopK(vectors, queries[q]));
+      exactNanos += System.nanoTime() - start;
+    }
+    log.info("[exact] {} us/query", exactNanos / QUERIES / 1_000);
+
+    double recallAt64 = 0;
+    for (int ef : new int[] {16, 32, 64, 128, 256}) {
+      int found = 0;
+      long nanos = 0;
+      for (int q = 0; q < QUERIES; q++) {
+        start = System.nanoTime();
+        List<HnswIndex.Neighbour> result = index.search(queries[q], K, ef, node -> true);
+        nanos += System.nanoTime() - start;
+        for (HnswIndex.Neighbour neighbour : result) {
+          if (truth.get(q).contains(neighbour.getNode())) {
+            found++;
+          }
+        }
+      }
+      double recall = (double) found / (QUERIES * K);
+      log.info(
+          "[hnsw] efSearch={} recall@{}={} {} us/query", ef, K, recall, nanos / QUERIES / 1_000);
+      if (ef == 64) {
+        recallAt64 = recall;
+      }
+    }
+    assertTrue(recallAt64 >= 0.9, "recall@10 at efSearch=64 was " + recallAt64);
+  }
+
+  private static Set<Integer> exactTopK(ArrayVectors vectors, float[] query) {
+    PriorityQueue<HnswIndex.Neighbour> top =
+        new PriorityQueue<>((a, b) -> Double.compare(a.getScore(), b.getScore()));
+    for (int node = 0; node < SIZE; node++) {
+      top.add(HnswIndex.Neighbour.of(node, vectors.similarity(query, node)));
+      if (top.size() > K) {
+        top.poll();
+      }
+    }
+    Set<Integer> nodes = new HashSet<>();
+    top.forEach(neighbour -> nodes.add(neighbour.getNode()));
+    return nodes;
+  }
+
+  private static float[][] clusteredVectors(Random random) {
+    float[][] centroids = new float[CLUSTERS][DIMENSION];
+    for (float[] centroid : centroids) {
+      for (int i = 0; i < DIMENSION; i++) {
+        centroid[i] = (float) random.nextGaussian();
+      }
+    }
+    float[][] corpus = new float[SIZE][];
+    for (int n = 0; n < SIZE; n++) {
+      float[] centroid = centroids[random.nextInt(CLUSTERS)];
+      float[] vector = new float[DIMENSION];
+      for (int i = 0; i < DIMENSION; i++) {
+        vector[i] = centroid[i] + (float) random.nextGaussian() * 0.5f;
+      }
+      corpus[n] = normalize(vector);
+    }
+    return corpus;
+  }
+
+  private static float[] perturb(float[] vector, Random random) {
+    float[] query = vector.clone();
+    for (int i = 0; i < query.length; i++) {
+      query[i] += (float) random.nextGaussian() * 0.05f;
+    }
+    return normalize(query);
+  }
+
+  private static float[] normalize(float[] vector) {
+    double sum = 0;
+    for (float v : vector) {
+      sum += v * v;
+    }
+    float norm = (float) Math.sqrt(sum);
+    for (int i = 0; i < vector.length; i++) {
+      vector[i] /= norm;
+    }
+    return vector;
+  }
+
+  private record ArrayVectors(float[][] corpus) implements HnswIndex.Vectors {
+    @Override
+    public float[] vector(int node) {
+      return corpus[node];
+    }
+
+    @Override
+    public double similarity(float[] query, int node) {
+      float[] vector = corpus[node];
+      double dot = 0;
+      for (int i = 0; i < vector.length; i++) {
+        dot += query[i] * vector[i];
+      }
+      return dot;
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.feuyeux.ai.hello.repository.IngestionManifest;
+import org.feuyeux.ai.hello.repository.IngestionOptions;
+import org.feuyeux.ai.hello.repository.IngestionPipeline;
+import org.feuyeux.ai.hello.repository.IngestionReport;
+import org.feuyeux.ai.hello.repository.source.DocumentSource;
+import org.feuyeux.ai.hello.repository.source.FileDocumentSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IngestionPipelineTests {
+  @TempDir Path dir;
+
+  @Test
+  public void testReingestOnlyEmbedsChangedSegments() throws Exception {
+    Path source = dir.resolve("source.txt");
+    Files.writeString(source, "alpha paragraph\n\nbeta paragraph\n\ngamma paragraph");
+    List<DocumentSource> sources = FileDocumentSource.scan(dir, "*.txt", 1024);
+
+    CountingEmbeddingModel embeddingModel = new CountingEmbeddingModel();
+    InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+    IngestionPipeline pipeline =
+        new IngestionPipeline(
+            embeddingModel,
+            store,
+            IngestionOptions.builder().batchSize(2).maxSegmentSize(20).maxOverlapSize(0).build());
+    Path manifestPath = dir.resolve("manifest.tsv");
+
+    IngestionReport first = pipeline.ingest(sources, IngestionManifest.load(manifestPath));
+    assertEquals(3, first.getStoredSegments());
+    assertEquals(3, embeddingModel.embedded.get());
+    assertEquals(3, count(store));
+
+    IngestionReport unchanged = pipeline.ingest(sources, IngestionManifest.load(manifestPath));
+    assertEquals(0, unchanged.getStoredSegments());
+    assertEquals(3, unchanged.getSkippedSegments());
+    assertEquals(3, embeddingModel.embedded.get());
+
+    Files.writeString(source, "alpha paragraph\n\nbeta, edited\n\ngamma paragraph");
+    IngestionReport edited = pipeline.ingest(sources, IngestionManifest.load(manifestPath));
+    assertEquals(1, edited.getStoredSegments());
+    assertEquals(2, edited.getSkippedSegments());
+    assertEquals(1, edited.getRemovedSegments());
+    assertEquals(4, embeddingModel.embedded.get());
+    assertEquals(3, count(store));
+
+    IngestionReport dropped = pipeline.ingest(List.of(), IngestionManifest.load(manifestPath));
+    assertEquals(3, dropped.getRemovedSegments());
+    assertEquals(0, count(store));
+  }
+
+  @Test
+  public void testDeadEmbedderStopsTheRun() throws Exception {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      content.append("paragraph ").append(i).append("\n\n");
+    }
+    Files.writeString(dir.resolve("source.txt"), content);
+    List<DocumentSource> sources = FileDocumentSource.scan(dir, "*.txt", 1024);
+    EmbeddingModel dying =
+        new EmbeddingModel() {
+          @Override
+          public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            throw new Error("embedder died");
+          }
+        };
+    IngestionPipeline pipeline =
+        new IngestionPipeline(
+            dying,
+            new InMemoryEmbeddingStore<>(),
+            IngestionOptions.builder()
+                .embedParallelism(1)
+                .batchSize(2)
+                .queueCapacity(4)
+                .maxSegmentSize(20)
+                .maxOverlapSize(0)
+                .build());
+
+    // Without the failure reaching the loader, it would block on the full queue for good.
+    IllegalStateException e =
+        assertTimeoutPreemptively(
+            Duration.ofSeconds(10),
+            () -> assertThrows(IllegalStateException.class, () -> pipeline.ingest(sources)));
+    assertEquals("embedder died", e.getCause().getMessage());
+  }
+
+  @Test
+  public void testFileSourceStreamsInChunks() throws Exception {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      content.append("段落 paragraph ").append(i).append("\n\n");
+    }
+    Path file = dir.resolve("large.md");
+    Files.writeString(file, content);
+
+    List<String> chunks = new ArrayList<>();
+    FileDocumentSource.of(file, 64).read(document -> chunks.add(document.text()));
+    assertTrue(chunks.size() > 1);
+    assertTrue(chunks.stream().allMatch(chunk -> chunk.length() <= 64));
+    assertEquals(content.toString().stripTrailing(), String.join("", chunks).stripTrailing());
+  }
+
+  private static int count(InMemoryEmbeddingStore<TextSegment> store) {
+    return store
+        .search(
+            EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[] {1f, 1f}))
+                .maxResults(100)
+                .build())
+        .matches()
+        .size();
+  }
+
+  static class CountingEmbeddingModel implements EmbeddingModel {
+    final AtomicInteger embedded = new AtomicInteger();
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+      embedded.addAndGet(segments.size());
+      return Response.from(
+          segments.stream()
+              .map(s -> Embedding.from(new float[] {s.text().length(), s.text().hashCode() % 7}))
+              .toList());
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.feuyeux.ai.hello.repository.store.HnswOptions;
+import org.feuyeux.ai.hello.repository.store.MappedEmbeddingStore;
+import org.feuyeux.ai.hello.repository.store.QuantizationOptions;
+import org.feuyeux.ai.hello.repository.store.QuantizationOptions.Mode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedEmbeddingStoreTests {
+  @TempDir Path dir;
+
+  @Test
+  public void testSearchSurvivesReopen() throws Exception {
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      store.addAll(
+          List.of("a", "b", "c"),
+          List.of(vector(1, 0, 0), vector(0, 1, 0), vector(1, 1, 0)),
+          List.of(segment("alpha", 1), segment("beta", 2), segment("gamma", 3)));
+      store.removeAll(List.of("b"));
+      store.addAll(List.of("c"), List.of(vector(0, 0, 1)), List.of(segment("gamma, edited", 4)));
+    }
+
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      assertEquals(2, store.size());
+      List<EmbeddingMatch<TextSegment>> matches = search(store, vector(1, 0, 0.1f));
+      assertEquals(List.of("a", "c"), matches.stream().map(EmbeddingMatch::embeddingId).toList());
+      assertEquals("alpha", matches.get(0).embedded().text());
+      assertEquals(1, matches.get(0).embedded().metadata().getInteger("chunk"));
+      assertEquals("gamma, edited", matches.get(1).embedded().text());
+      assertArrayEquals(new float[] {0, 0, 1}, matches.get(1).embedding().vector());
+    }
+  }
+
+  @Test
+  public void testIncompleteLogRecordIsDropped() throws Exception {
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      store.addAll(
+          List.of("a", "b"),
+          List.of(vector(1, 0), vector(0, 1)),
+          List.of(segment("alpha", 1), segment("beta", 2)));
+    }
+    try (FileChannel log =
+        FileChannel.open(dir.resolve("segments.log"), StandardOpenOption.WRITE)) {
+      log.truncate(log.size() - 3);
+    }
+
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      assertEquals(1, store.size());
+      store.addAll(List.of("b"), List.of(vector(0, 1)), List.of(segment("beta", 2)));
+    }
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      assertEquals(2, store.size());
+      assertEquals("b", search(store, vector(0, 1)).get(0).embeddingId());
+    }
+  }
+
+  @Test
+  public void testReopenCompactsRemovedSlots() throws Exception {
+    List<String> ids = new ArrayList<>();
+    List<Embedding> embeddings = new ArrayList<>();
+    List<TextSegment> segments = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      ids.add("id-" + i);
+      embeddings.add(vector(i, 1, 0));
+      segments.add(segment("segment " + i, i));
+    }
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      store.addAll(ids, embeddings, segments);
+      store.removeAll(ids.subList(0, 30));
+    }
+    long logSize = Files.size(dir.resolve("segments.log"));
+
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      assertTrue(Files.size(dir.resolve("segments.log")) < logSize / 2);
+      assertEquals(10, store.size());
+      store.addAll(List.of("new"), List.of(vector(0, 0, 1)), List.of(segment("new", 40)));
+    }
+    HnswOptions options = HnswOptions.builder().buildParallelism(2).build();
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir, options)) {
+      assertEquals(11, store.size());
+      assertEquals("new", search(store, vector(0, 0, 1)).get(0).embeddingId());
+      EmbeddingMatch<TextSegment> last = search(store, vector(39, 1, 0)).get(0);
+      assertEquals("id-39", last.embeddingId());
+      assertEquals("segment 39", last.embedded().text());
+      assertArrayEquals(new float[] {39, 1, 0}, last.embedding().vector());
+    }
+  }
+
+  @Test
+  public void testHnswSearchAgreesWithExactSearch() throws Exception {
+    Random random = new Random(7);
+    List<String> ids = new ArrayList<>();
+    List<Embedding> embeddings = new ArrayList<>();
+    List<TextSegment> segments = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      ids.add("id-" + i);
+      embeddings.add(vector(random.nextFloat(), random.nextFloat(), random.nextFloat() - 0.5f));
+      segments.add(segment("segment " + i, i));
+    }
+    HnswOptions options = HnswOptions.builder().buildParallelism(2).build();
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir, options)) {
+      store.addAll(ids.subList(0, 250), embeddings.subList(0, 250), segments.subList(0, 250));
+    }
+
+    try (MappedEmbeddingStore indexed = MappedEmbeddingStore.open(dir, options)) {
+      indexed.addAll(
+          ids.subList(250, 500), embeddings.subList(250, 500), segments.subList(250, 500));
+      indexed.removeAll(List.of("id-0", "id-1"));
+      indexed.flush();
+      try (MappedEmbeddingStore exact = MappedEmbeddingStore.open(dir)) {
+        for (int q = 0; q < 20; q++) {
+          Embedding query = embeddings.get(random.nextInt(500));
+          assertEquals(ids(search(exact, query)), ids(search(indexed, query)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testQuantizedSearchIsReranked() throws Exception {
+    Random random = new Random(11);
+    List<String> ids = new ArrayList<>();
+    List<Embedding> embeddings = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      float[] vector = new float[64];
+      for (int d = 0; d < vector.length; d++) {
+        vector[d] = (float) random.nextGaussian();
+      }
+      ids.add("id-" + i);
+      embeddings.add(Embedding.from(vector));
+    }
+    try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+      store.addAll(ids, embeddings, null);
+    }
+
+    try (MappedEmbeddingStore exact = MappedEmbeddingStore.open(dir)) {
+      for (QuantizationOptions options :
+          List.of(
+              QuantizationOptions.builder().mode(Mode.INT8).rerankFactor(8).build(),
+              QuantizationOptions.builder().mode(Mode.INT8).rerankFactor(8).vectorApi(true).build(),
+              QuantizationOptions.builder().mode(Mode.BINARY).rerankFactor(8).build())) {
+        Mode mode = options.getMode();
+        try (MappedEmbeddingStore quantized = MappedEmbeddingStore.open(dir, null, options)) {
+          for (int q = 0; q < 10; q++) {
+            Embedding query = embeddings.get(q);
+            List<EmbeddingMatch<TextSegment>> matches = search(quantized, query);
+            assertEquals("id-" + q, matches.get(0).embeddingId());
+            assertEquals(search(exact, query).get(0).score(), matches.get(0).score(), 1e-6);
+            if (mode == Mode.INT8) {
+              assertEquals(ids(search(exact, query)), ids(matches));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static List<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+    return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+  }
+
+  private static List<EmbeddingMatch<TextSegment>> search(
+      MappedEmbeddingStore store, Embedding query) {
+    return store
+        .search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(10).build())
+        .matches();
+  }
+
+  private static Embedding vector(float... values) {
+    return Embedding.from(values);
+  }
+
+  private static TextSegment segment(String text, int chunk) {
+    return TextSegment.from(text, Metadata.from(Map.of("chunk", chunk)));
+  }
+}
@@ -0,0 +1,35 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import java.util.List;
+import org.feuyeux.ai.hello.repository.MaximalMarginalRelevance;
+import org.junit.jupiter.api.Test;
+
+public class MaximalMarginalRelevanceTests {
+
+  @Test
+  public void testSelectSkipsNearDuplicates() {
+    Embedding query = Embedding.from(new float[] {1f, 0f, 0f});
+    List<EmbeddingMatch<String>> candidates =
+        List.of(
+            match("a", 1f, 0.1f, 0f),
+            match("a-duplicate", 1f, 0.11f, 0f),
+            match("b", 0.7f, 0f, 0.7f));
+
+    List<EmbeddingMatch<String>> relevanceOnly =
+        MaximalMarginalRelevance.select(query, candidates, 2, 1.0);
+    assertEquals(
+        List.of("a", "a-duplicate"), relevanceOnly.stream().map(EmbeddingMatch::embedded).toList());
+
+    List<EmbeddingMatch<String>> diverse =
+        MaximalMarginalRelevance.select(query, candidates, 2, 0.3);
+    assertEquals(List.of("a", "b"), diverse.stream().map(EmbeddingMatch::embedded).toList());
+  }
+
+  private static EmbeddingMatch<String> match(String id, float... vector) {
+    return new EmbeddingMatch<>(1.0, id, Embedding.from(vector), id);
+  }
+}
@@ -0,0 +1,74 @@
+package org.feuyeux.ai.hello;
+
+import static org.feuyeux.ai.hello.repository.ChatModelBuilder.buildChatModel;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.SystemMessage;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the per-call cost of building a chat model and service proxy (what every node function
+ * used to do) with looking them up from the {@link ModelRegistry}. No Ollama server is needed,
+ * since neither path sends a request.
+ */
+@Slf4j
+public class ModelRegistryBenchmarkTests {
+  private static final String BASE_URL = "http://localhost:11434";
+  private static final int WARMUP = 200;
+  private static final int ITERATIONS = 2_000;
+
+  interface Grader {
+    @SystemMessage("Give a binary score 'yes' or 'no'.")
+    String invoke(String userMessage);
+  }
+
+  // mvn test -Dtest=org.feuyeux.ai.hello.ModelRegistryBenchmarkTests
+  @Test
+  public void testPerCallOverhead() {
+    ModelRegistry registry = new ModelRegistry();
+    assertSame(registry.service(Grader.class, BASE_URL), registry.service(Grader.class, BASE_URL));
+
+    Measurement rebuilt =
+        measure(
+            () -> {
+              ChatModel chatModel = buildChatModel(BASE_URL);
+              return AiServices.create(Grader.class, chatModel);
+            });
+    Measurement shared = measure(() -> registry.service(Grader.class, BASE_URL));
+
+    log.info(
+        "[per call] rebuilt: {} ns, {} bytes | registry: {} ns, {} bytes",
+        rebuilt.nanos,
+        rebuilt.bytes,
+        shared.nanos,
+        shared.bytes);
+    assertTrue(shared.bytes < rebuilt.bytes);
+  }
+
+  private static Measurement measure(Supplier<Object> call) {
+    com.sun.management.ThreadMXBean threadMXBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Object sink = null;
+    for (int i = 0; i < WARMUP; i++) {
+      sink = call.get();
+    }
+    long bytesBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink = call.get();
+    }
+    long nanos = (System.nanoTime() - start) / ITERATIONS;
+    long bytes = (threadMXBean.getCurrentThreadAllocatedBytes() - bytesBefore) / ITERATIONS;
+    assertTrue(sink != null);
+    return new Measurement(nanos, bytes);
+  }
+
+  private record Measurement(long nanos, long bytes) {}
+}
@@ -0,0 +1,73 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.feuyeux.ai.hello.repository.ChatModelKey;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.feuyeux.ai.hello.repository.ModelRole;
+import org.feuyeux.ai.hello.util.AdaptiveLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ModelRoleTests {
+  private static final String BASE_URL = "http://localhost:11434";
+  private static final List<String> PROPERTIES =
+      List.of(
+          "OLLAMA_MODEL",
+          "OLLAMA_NUM_CTX",
+          "ROUTER_MODEL",
+          "ROUTER_NUM_PREDICT",
+          "ROUTER_TIMEOUT_SECONDS",
+          "GENERATOR_NUM_CTX");
+
+  @AfterEach
+  public void clearProperties() {
+    PROPERTIES.forEach(System::clearProperty);
+  }
+
+  @Test
+  public void testRolesOverrideSharedSettings() {
+    System.setProperty("OLLAMA_MODEL", "qwen2.5:7b");
+    System.setProperty("OLLAMA_NUM_CTX", "4096");
+    System.setProperty("ROUTER_MODEL", "qwen2.5:0.5b");
+    System.setProperty("ROUTER_NUM_PREDICT", "32");
+    System.setProperty("ROUTER_TIMEOUT_SECONDS", "10");
+    System.setProperty("GENERATOR_NUM_CTX", "8192");
+
+    Map<ModelRole, ChatModelKey> models = ModelRole.fromEnv();
+
+    ChatModelKey router = models.get(ModelRole.ROUTER);
+    assertEquals("qwen2.5:0.5b", router.getModelName());
+    assertEquals(32, router.getNumPredict());
+    assertEquals(4096, router.getNumCtx());
+    assertEquals(Duration.ofSeconds(10), router.getTimeout());
+
+    ChatModelKey grader = models.get(ModelRole.HALLUCINATION_GRADER);
+    assertEquals("qwen2.5:7b", grader.getModelName());
+    assertEquals(128, grader.getNumPredict());
+
+    ChatModelKey generator = models.get(ModelRole.GENERATOR);
+    assertEquals("qwen2.5:7b", generator.getModelName());
+    assertNull(generator.getNumPredict());
+    assertEquals(8192, generator.getNumCtx());
+    assertEquals(AdaptiveLimiter.Lane.GENERATION, ModelRole.GENERATOR.lane());
+  }
+
+  @Test
+  public void testRolesWithEqualSettingsShareOneModel() {
+    ModelRegistry registry = new ModelRegistry();
+    ChatModelKey hallucination = registry.chatModelKey(ModelRole.HALLUCINATION_GRADER, BASE_URL);
+    ChatModelKey answer = registry.chatModelKey(ModelRole.ANSWER_GRADER, BASE_URL);
+    ChatModelKey generator = registry.chatModelKey(ModelRole.GENERATOR, BASE_URL);
+
+    assertEquals(BASE_URL, answer.getBaseUrl());
+    assertSame(registry.chatModel(hallucination), registry.chatModel(answer));
+    assertNotSame(registry.chatModel(answer), registry.chatModel(generator));
+  }
+}
@@ -0,0 +1,54 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.feuyeux.ai.hello.repository.QueryEmbeddingCache;
+import org.feuyeux.ai.hello.util.LruCache;
+import org.junit.jupiter.api.Test;
+
+public class QueryEmbeddingCacheTests {
+
+  @Test
+  public void testNormalizedQueriesShareOneEmbedding() {
+    for (boolean offHeap : new boolean[] {false, true}) {
+      IngestionPipelineTests.CountingEmbeddingModel model =
+          new IngestionPipelineTests.CountingEmbeddingModel();
+      QueryEmbeddingCache cache =
+          new QueryEmbeddingCache(model, 16, Duration.ofMinutes(1), offHeap);
+
+      float[] first = cache.embed("What is  agent memory?").vector();
+      float[] second = cache.embed(" what is agent\nmemory? ").vector();
+      assertArrayEquals(first, second);
+      assertEquals(1, model.embedded.get());
+      assertEquals(1, cache.stats().getHits());
+      assertEquals(1, cache.stats().getMisses());
+
+      cache.embed("What are the types of agent memory?");
+      assertEquals(2, model.embedded.get());
+      // The original text was embedded, not the lower-cased key.
+      assertArrayEquals(model.embed("What is  agent memory?").content().vector(), first);
+    }
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedAndExpired() {
+    AtomicLong now = new AtomicLong();
+    LruCache<String, String> cache = new LruCache<>(2, Duration.ofSeconds(10), now::get);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    assertTrue(cache.get("a").isPresent());
+    cache.put("c", "3");
+    assertTrue(cache.get("b").isEmpty());
+    assertTrue(cache.get("a").isPresent());
+
+    now.addAndGet(Duration.ofSeconds(10).toNanos());
+    assertTrue(cache.get("c").isEmpty());
+    assertEquals(2, cache.stats().getHits());
+    assertEquals(2, cache.stats().getMisses());
+    assertEquals(2, cache.stats().getEvictions());
+  }
+}
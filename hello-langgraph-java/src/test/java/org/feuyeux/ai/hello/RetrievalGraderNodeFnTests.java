@@ -0,0 +1,99 @@
+package org.feuyeux.ai.hello;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.feuyeux.ai.hello.fun.RetrievalGraderNodeFn;
+import org.feuyeux.ai.hello.repository.ModelRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Grades against a stub Ollama server whose batch answers have the wrong number of scores. */
+public class RetrievalGraderNodeFnTests {
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  private HttpServer server;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  private String stub() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext(
+        "/api/chat",
+        exchange -> {
+          maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+          String request = new String(exchange.getRequestBody().readAllBytes(), UTF_8);
+          String content;
+          if (request.contains("several numbered documents")) {
+            content = "{\"binaryScores\": [\"yes\"]}";
+          } else {
+            sleep(request.contains("slow document") ? 5_000 : 200);
+            content =
+                request.contains("memory")
+                    ? "{\"binaryScore\": \"yes\"}"
+                    : "{\"binaryScore\": \"no\"}";
+          }
+          byte[] body =
+              JSON.writeValueAsBytes(
+                  Map.of(
+                      "model", "qwen2.5",
+                      "created_at", "2025-01-01T00:00:00Z",
+                      "message", Map.of("role", "assistant", "content", content),
+                      "done", true));
+          inFlight.decrementAndGet();
+          exchange.getResponseHeaders().add("Content-Type", "application/json");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    server.start();
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @Test
+  public void testScoreCountMismatchFallsBackToConcurrentSingleCalls() throws Exception {
+    RetrievalGraderNodeFn grader = RetrievalGraderNodeFn.of(new ModelRegistry(), stub());
+    AtomicInteger calls = new AtomicInteger();
+
+    List<Optional<RetrievalGraderNodeFn.Score>> scores =
+        grader.applyBatchOrEach(
+            "How do agents remember things?",
+            List.of("agent memory", "the weather", "a slow document", "more on memory"),
+            4,
+            Duration.ofSeconds(2),
+            calls::incrementAndGet);
+
+    assertEquals(
+        List.of(Optional.of("yes"), Optional.of("no"), Optional.empty(), Optional.of("yes")),
+        scores.stream().map(score -> score.map(s -> s.binaryScore)).toList());
+    // One batch call, then one call per document.
+    assertEquals(5, calls.get());
+    assertTrue(maxInFlight.get() > 1, "single calls ran one after another");
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
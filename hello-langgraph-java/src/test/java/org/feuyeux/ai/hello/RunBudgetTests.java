@@ -0,0 +1,89 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.feuyeux.ai.hello.graph.AdaptiveRagGraph;
+import org.feuyeux.ai.hello.graph.GraphOptions;
+import org.feuyeux.ai.hello.graph.RunBudget;
+import org.junit.jupiter.api.Test;
+
+public class RunBudgetTests {
+  private final RunBudget budget =
+      new RunBudget(
+          GraphOptions.builder()
+              .maxGenerations(3)
+              .maxRewrites(2)
+              .maxLlmCalls(10)
+              .runDeadline(Duration.ofSeconds(60))
+              .build());
+
+  private static AdaptiveRagGraph.State state(Object... keyValues) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("question", "What is agent memory?");
+    data.put("started_at", System.currentTimeMillis());
+    for (int i = 0; i < keyValues.length; i += 2) {
+      data.put((String) keyValues[i], keyValues[i + 1]);
+    }
+    return new AdaptiveRagGraph.State(data);
+  }
+
+  @Test
+  public void testWithinBudgetUntilCallLimit() {
+    assertTrue(budget.withinBudget(state("llm_calls", 9)));
+    assertFalse(budget.withinBudget(state("llm_calls", 10)));
+  }
+
+  @Test
+  public void testWithinBudgetUntilDeadline() {
+    long started = System.currentTimeMillis();
+    assertTrue(budget.withinBudget(state("started_at", started - 59_000)));
+    assertFalse(budget.withinBudget(state("started_at", started - 60_000)));
+
+    RunBudget noDeadline = new RunBudget(GraphOptions.builder().runDeadline(Duration.ZERO).build());
+    assertTrue(noDeadline.withinBudget(state("started_at", started - 3_600_000)));
+  }
+
+  @Test
+  public void testDecideToGenerate() {
+    assertEquals("generate", budget.decideToGenerate(state("documents", List.of("memory"))));
+    assertEquals("transform_query", budget.decideToGenerate(state("rewrites", 1)));
+    assertEquals("budget exhausted", budget.decideToGenerate(state("rewrites", 2)));
+    assertEquals(
+        "budget exhausted",
+        budget.decideToGenerate(state("documents", List.of("memory"), "llm_calls", 10)));
+  }
+
+  @Test
+  public void testDecideOnGeneration() {
+    assertEquals("useful", budget.decideOnGeneration(state("grade", "useful", "llm_calls", 10)));
+    assertEquals(
+        "not supported",
+        budget.decideOnGeneration(state("grade", "not supported", "generations", 2)));
+    assertEquals(
+        "budget exhausted",
+        budget.decideOnGeneration(state("grade", "not supported", "generations", 3)));
+    assertEquals(
+        "not useful", budget.decideOnGeneration(state("grade", "not useful", "rewrites", 1)));
+    assertEquals(
+        "budget exhausted", budget.decideOnGeneration(state("grade", "not useful", "rewrites", 2)));
+    assertEquals(
+        "budget exhausted",
+        budget.decideOnGeneration(
+            state("grade", "not useful", "started_at", System.currentTimeMillis() - 60_000)));
+  }
+
+  @Test
+  public void testBestAnswerPrefersGroundedGeneration() {
+    assertEquals(
+        "grounded",
+        budget.bestAnswer(state("best_generation", "grounded", "generation", "latest")));
+    assertEquals("latest", budget.bestAnswer(state("generation", "latest")));
+    assertEquals("I don't know.", budget.bestAnswer(state()));
+  }
+}
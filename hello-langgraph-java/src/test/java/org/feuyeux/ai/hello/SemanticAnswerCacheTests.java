@@ -0,0 +1,47 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.langchain4j.data.embedding.Embedding;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.feuyeux.ai.hello.service.SemanticAnswerCache;
+import org.junit.jupiter.api.Test;
+
+public class SemanticAnswerCacheTests {
+  private static final Map<String, float[]> EMBEDDINGS =
+      Map.of(
+          "What is prompt engineering?", new float[] {1f, 0.1f, 0f},
+          "What's prompt engineering?", new float[] {1f, 0.12f, 0f},
+          "What is agent memory?", new float[] {0f, 1f, 0.2f});
+
+  @Test
+  public void testParaphraseHitsUntilCorpusChanges() {
+    AtomicLong corpusVersion = new AtomicLong();
+    SemanticAnswerCache cache =
+        new SemanticAnswerCache(
+            question -> Embedding.from(EMBEDDINGS.get(question)),
+            corpusVersion::get,
+            16,
+            Duration.ofMinutes(1),
+            0.95);
+
+    assertTrue(cache.lookup("What is prompt engineering?").isEmpty());
+    cache.put("What is prompt engineering?", "Prompting LLMs well.", 0);
+
+    SemanticAnswerCache.Hit hit = cache.lookup("What's prompt engineering?").orElseThrow();
+    assertEquals("What is prompt engineering?", hit.getQuestion());
+    assertEquals("Prompting LLMs well.", hit.getGeneration());
+    assertTrue(cache.lookup("What is agent memory?").isEmpty());
+
+    corpusVersion.incrementAndGet();
+    assertTrue(cache.lookup("What's prompt engineering?").isEmpty());
+    // An answer computed against the previous corpus is not cached.
+    cache.put("What is prompt engineering?", "Prompting LLMs well.", 0);
+    assertTrue(cache.lookup("What is prompt engineering?").isEmpty());
+    assertEquals(1, cache.stats().getHits());
+    assertEquals(4, cache.stats().getMisses());
+  }
+}
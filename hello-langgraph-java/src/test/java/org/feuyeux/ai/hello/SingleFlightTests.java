@@ -0,0 +1,123 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.feuyeux.ai.hello.util.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTests {
+
+  @Test
+  public void testFollowerTimesOutWithoutCancellingLeader() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>();
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> leader =
+          executor.submit(
+              () ->
+                  flight.call(
+                      "q",
+                      () -> {
+                        entered.countDown();
+                        release.await();
+                        return "answer";
+                      }));
+      assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+      assertThrows(
+          TimeoutException.class,
+          () -> flight.call("q", () -> "duplicate run", Duration.ofMillis(20)));
+      Future<String> follower = executor.submit(() -> flight.call("q", () -> "duplicate run"));
+      follower.cancel(true);
+
+      release.countDown();
+      assertEquals("answer", leader.get(10, TimeUnit.SECONDS));
+      assertEquals(1, flight.leaders());
+      assertEquals(0, flight.inFlight());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFollowersShareLeaderFailure() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>();
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> leader =
+          executor.submit(
+              () ->
+                  flight.call(
+                      "q",
+                      () -> {
+                        entered.countDown();
+                        release.await();
+                        throw new IllegalStateException("ollama unavailable");
+                      }));
+      assertTrue(entered.await(10, TimeUnit.SECONDS));
+      Future<String> follower = executor.submit(() -> flight.call("q", () -> "duplicate run"));
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (flight.followers() < 1 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      Exception failure = assertThrows(Exception.class, () -> follower.get(10, TimeUnit.SECONDS));
+      assertTrue(failure.getCause() instanceof IllegalStateException);
+      assertThrows(Exception.class, () -> leader.get(10, TimeUnit.SECONDS));
+      // Nothing is remembered once the run completes: the next call runs again.
+      assertEquals("retried", flight.call("q", () -> "retried"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFollowerTakesOverFromCancelledLeader() throws Exception {
+    SingleFlight<String, String> flight = new SingleFlight<>();
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> leader =
+          executor.submit(
+              () ->
+                  flight.call(
+                      "q",
+                      () -> {
+                        entered.countDown();
+                        release.await();
+                        throw new CancellationException("leader's deadline passed");
+                      }));
+      assertTrue(entered.await(10, TimeUnit.SECONDS));
+      Future<String> follower =
+          executor.submit(() -> flight.call("q", () -> "follower's run", Duration.ofSeconds(10)));
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (flight.followers() < 1 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      assertThrows(Exception.class, () -> leader.get(10, TimeUnit.SECONDS));
+      assertEquals("follower's run", follower.get(10, TimeUnit.SECONDS));
+      assertEquals(2, flight.leaders());
+      assertEquals(0, flight.inFlight());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.feuyeux.ai.hello.graph.Speculator;
+import org.junit.jupiter.api.Test;
+
+public class SpeculatorTests {
+
+  @Test
+  public void testKeptResultIsTakenOnlyByItsRun() {
+    Speculator speculator = new Speculator();
+    speculator.keep("retrieve", "run-1", speculator.start(() -> Map.of("documents", "a")));
+    speculator.keep("retrieve", "run-2", speculator.start(() -> Map.of("documents", "b")));
+
+    assertEquals(Optional.empty(), speculator.take("web_search", "run-1"));
+    assertEquals(Optional.of(Map.of("documents", "a")), speculator.take("retrieve", "run-1"));
+    // Taken once: the node runs its own work the next time.
+    assertEquals(Optional.empty(), speculator.take("retrieve", "run-1"));
+    assertEquals(Optional.of(Map.of("documents", "b")), speculator.take("retrieve", "run-2"));
+    assertEquals(Optional.empty(), speculator.take("retrieve", "run-3"));
+  }
+
+  @Test
+  public void testDiscardAndFinishCancelTheWork() throws Exception {
+    Speculator speculator = new Speculator();
+    CountDownLatch running = new CountDownLatch(2);
+    CountDownLatch interrupted = new CountDownLatch(2);
+
+    Speculator.Speculation discarded = speculator.start(() -> block(running, interrupted));
+    speculator.keep("web_search", "run-1", speculator.start(() -> block(running, interrupted)));
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+
+    speculator.discard(discarded);
+    speculator.finish("run-1");
+
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    assertEquals(Optional.empty(), speculator.take("web_search", "run-1"));
+    assertEquals(2, speculator.stats().getDiscarded());
+    assertEquals(0, speculator.stats().getUsed());
+  }
+
+  @Test
+  public void testFailedSpeculationIsNotTaken() {
+    Speculator speculator = new Speculator();
+    speculator.keep(
+        "retrieve",
+        "run-1",
+        speculator.start(
+            () -> {
+              throw new IllegalStateException("store is down");
+            }));
+
+    assertEquals(Optional.empty(), speculator.take("retrieve", "run-1"));
+    assertEquals(0, speculator.stats().getUsed());
+  }
+
+  @Test
+  public void testSavedAndWastedTime() throws Exception {
+    Speculator speculator = new Speculator();
+    speculator.keep("retrieve", "run-1", speculator.start(() -> sleepThen(200)));
+    speculator.keep("web_search", "run-1", speculator.start(() -> sleepThen(100)));
+
+    // The node is reached after both speculations finished; web search is never taken.
+    Thread.sleep(400);
+    assertTrue(speculator.take("retrieve", "run-1").isPresent());
+    speculator.finish("run-1");
+
+    Speculator.Stats stats = speculator.stats();
+    assertEquals(2, stats.getStarted());
+    assertEquals(1, stats.getUsed());
+    assertEquals(1, stats.getDiscarded());
+    assertTrue(stats.getUsedWorkMillis() >= 200, stats.toString());
+    assertTrue(stats.savedMillis() >= 150, stats.toString());
+    assertTrue(stats.wastedMillis() >= 100, stats.toString());
+  }
+
+  private static Map<String, Object> block(CountDownLatch running, CountDownLatch interrupted) {
+    running.countDown();
+    try {
+      Thread.sleep(60_000);
+    } catch (InterruptedException e) {
+      interrupted.countDown();
+    }
+    return Map.of();
+  }
+
+  private static Map<String, Object> sleepThen(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return Map.of("slept", millis);
+  }
+}
@@ -0,0 +1,61 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.feuyeux.ai.hello.graph.VerdictMemo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class VerdictMemoTests {
+  @TempDir Path dir;
+
+  @Test
+  public void testVerdictsSurviveRestart() throws Exception {
+    Path spill = dir.resolve("verdicts.tsv");
+    String relevant = VerdictMemo.key("retrieval", List.of("What is agent memory?", "doc 1"));
+    String irrelevant = VerdictMemo.key("retrieval", List.of("What is agent memory?", "doc 2"));
+    assertNotEquals(
+        relevant, VerdictMemo.key("retrieval", List.of("What is agent memory?doc", " 1")));
+
+    AtomicInteger graded = new AtomicInteger();
+    VerdictMemo memo = VerdictMemo.open(2, spill);
+    assertTrue(memo.computeIfAbsent(relevant, () -> graded.incrementAndGet() > 0));
+    assertTrue(memo.computeIfAbsent(relevant, () -> graded.incrementAndGet() > 0));
+    memo.put(irrelevant, false);
+    assertEquals(1, graded.get());
+
+    VerdictMemo reopened = VerdictMemo.open(2, spill);
+    assertEquals(Optional.of(true), reopened.get(relevant));
+    assertEquals(Optional.of(false), reopened.get(irrelevant));
+
+    for (int i = 0; i < 4; i++) {
+      reopened.put(VerdictMemo.key("answer", List.of("q", "generation " + i)), true);
+    }
+    assertTrue(reopened.get(relevant).isEmpty());
+    VerdictMemo compacted = VerdictMemo.open(2, spill);
+    assertEquals(2, Files.readAllLines(spill).size());
+    assertEquals(2, compacted.stats().getSize());
+  }
+
+  @Test
+  public void testSpillIsCompactedWhileRunning() throws Exception {
+    Path spill = dir.resolve("verdicts.tsv");
+    VerdictMemo memo = VerdictMemo.open(3, spill);
+    for (int i = 0; i < 20; i++) {
+      memo.put(VerdictMemo.key("answer", List.of("q", "generation " + i)), i % 2 == 0);
+      assertTrue(Files.readAllLines(spill).size() <= 6);
+    }
+
+    VerdictMemo reopened = VerdictMemo.open(3, spill);
+    assertEquals(3, reopened.stats().getSize());
+    assertEquals(
+        Optional.of(false), reopened.get(VerdictMemo.key("answer", List.of("q", "generation 19"))));
+  }
+}
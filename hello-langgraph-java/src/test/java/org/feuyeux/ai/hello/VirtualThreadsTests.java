@@ -0,0 +1,80 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.feuyeux.ai.hello.util.VirtualThreads;
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadsTests {
+
+  @Test
+  public void testMapOrderedKeepsOrderAndCapsParallelism() {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    List<Integer> items = List.of(5, 4, 3, 2, 1, 0);
+    List<Optional<Integer>> results =
+        VirtualThreads.mapOrdered(
+            items,
+            i -> {
+              maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              sleep(10L * i);
+              inFlight.decrementAndGet();
+              return i * 10;
+            },
+            2,
+            Duration.ofSeconds(5));
+    assertEquals(
+        List.of(50, 40, 30, 20, 10, 0), results.stream().map(Optional::orElseThrow).toList());
+    assertTrue(maxInFlight.get() <= 2);
+  }
+
+  @Test
+  public void testMapOrderedDropsTimedOutAndFailedCalls() {
+    List<Optional<String>> results =
+        VirtualThreads.mapOrdered(
+            List.of("fast", "slow", "boom"),
+            s -> {
+              if (s.equals("slow")) {
+                sleep(5_000);
+              } else if (s.equals("boom")) {
+                throw new IllegalStateException(s);
+              }
+              return s;
+            },
+            3,
+            Duration.ofMillis(200));
+    assertEquals(List.of(Optional.of("fast"), Optional.empty(), Optional.empty()), results);
+  }
+
+  @Test
+  public void testMapOrderedPropagatesRejection() {
+    assertThrows(
+        RejectedExecutionException.class,
+        () ->
+            VirtualThreads.mapOrdered(
+                List.of("ok", "rejected"),
+                s -> {
+                  if (s.equals("rejected")) {
+                    throw new RejectedExecutionException("Too many queued model calls");
+                  }
+                  return s;
+                },
+                2,
+                Duration.ofSeconds(5)));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.feuyeux.ai.hello;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.langchain4j.rag.content.Content;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.feuyeux.ai.hello.fun.StubWebSearchEngine;
+import org.feuyeux.ai.hello.fun.WebSearchNodeFn;
+import org.feuyeux.ai.hello.util.Deadline;
+import org.junit.jupiter.api.Test;
+
+public class WebSearchNodeFnTests {
+
+  @Test
+  public void testCachedByNormalizedQueryUntilExpired() {
+    AtomicLong now = new AtomicLong();
+    StubWebSearchEngine engine = new StubWebSearchEngine();
+    WebSearchNodeFn webSearch = new WebSearchNodeFn(engine, 16, Duration.ofSeconds(60), now::get);
+
+    List<Content> first = webSearch.apply("Who is the first president of China?");
+    assertEquals(3, first.size());
+    assertTrue(first.get(0).textSegment().text().contains("first president"));
+    assertEquals(first, webSearch.apply("  who is the first President of China? "));
+    assertEquals(1, engine.calls());
+    assertEquals(1, webSearch.getCacheStats().getHits());
+
+    now.addAndGet(Duration.ofSeconds(61).toNanos());
+    webSearch.apply("Who is the first president of China?");
+    assertEquals(2, engine.calls());
+  }
+
+  @Test
+  public void testConcurrentIdenticalSearchesShareOneCall() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    StubWebSearchEngine stub = new StubWebSearchEngine();
+    WebSearchNodeFn webSearch =
+        new WebSearchNodeFn(
+            request -> {
+              entered.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return stub.search(request);
+            },
+            16,
+            Duration.ofSeconds(60));
+
+    int followers = 7;
+    ExecutorService executor = Executors.newFixedThreadPool(followers + 1);
+    try {
+      List<Future<List<Content>>> results = new ArrayList<>();
+      results.add(executor.submit(() -> webSearch.apply("What is agent memory?")));
+      assertTrue(entered.await(10, TimeUnit.SECONDS));
+      for (int i = 0; i < followers; i++) {
+        results.add(executor.submit(() -> webSearch.apply("what is agent memory?")));
+      }
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (webSearch.getCoalescedSearches() < followers && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      List<Content> leader = results.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<List<Content>> result : results) {
+        assertEquals(leader, result.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(1, stub.calls());
+      assertEquals(followers, webSearch.getCoalescedSearches());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFollowerStopsWaitingAtItsDeadline() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    StubWebSearchEngine stub = new StubWebSearchEngine();
+    WebSearchNodeFn webSearch =
+        new WebSearchNodeFn(
+            request -> {
+              entered.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return stub.search(request);
+            },
+            16,
+            Duration.ofSeconds(60));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<Content>> leader =
+          executor.submit(() -> webSearch.apply("What is agent memory?"));
+      assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+      long start = System.nanoTime();
+      assertThrows(
+          Deadline.ExceededException.class,
+          () ->
+              Deadline.after(Duration.ofMillis(200))
+                  .run(() -> webSearch.apply("what is agent memory?")));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+      // The leader is not affected by the follower giving up.
+      release.countDown();
+      assertEquals(3, leader.get(10, TimeUnit.SECONDS).size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package org.feuyeux.ai.hello.repository.store;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Int8 code products on the incubating Vector API. Only compiled with {@code -Pvector-api}, and
+ * only loaded by {@link QuantizedVectors} when the JVM runs with {@code --add-modules
+ * jdk.incubator.vector}; bytes are widened to full-width int or float lanes before multiplying.
+ */
+final class VectorKernels implements QuantizedVectors.Kernels {
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+  // As many byte lanes as there are int or float lanes, where such a byte shape exists.
+  private static final VectorSpecies<Byte> INT_BYTES = bytesFor(INTS.vectorBitSize());
+  private static final VectorSpecies<Byte> FLOAT_BYTES = bytesFor(FLOATS.vectorBitSize());
+
+  VectorKernels() {}
+
+  /** Whether this CPU has vectors wide enough, 256 bits and up, to widen 64 bits of codes. */
+  @Override
+  public boolean supported() {
+    return INT_BYTES.length() == INTS.length() && FLOAT_BYTES.length() == FLOATS.length();
+  }
+
+  private static VectorSpecies<Byte> bytesFor(int bits) {
+    return VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, bits / 4)));
+  }
+
+  @Override
+  public int dot(byte[] a, byte[] b) {
+    IntVector sum = IntVector.zero(INTS);
+    int i = 0;
+    for (int bound = INT_BYTES.loopBound(a.length); i < bound; i += INT_BYTES.length()) {
+      IntVector x =
+          (IntVector)
+              ByteVector.fromArray(INT_BYTES, a, i).convertShape(VectorOperators.B2I, INTS, 0);
+      IntVector y =
+          (IntVector)
+              ByteVector.fromArray(INT_BYTES, b, i).convertShape(VectorOperators.B2I, INTS, 0);
+      sum = sum.add(x.mul(y));
+    }
+    int dot = sum.reduceLanes(VectorOperators.ADD);
+    for (; i < a.length; i++) {
+      dot += a[i] * b[i];
+    }
+    return dot;
+  }
+
+  @Override
+  public double dot(float[] a, byte[] b) {
+    FloatVector sum = FloatVector.zero(FLOATS);
+    int i = 0;
+    for (int bound = FLOAT_BYTES.loopBound(a.length); i < bound; i += FLOAT_BYTES.length()) {
+      FloatVector y =
+          (FloatVector)
+              ByteVector.fromArray(FLOAT_BYTES, b, i).convertShape(VectorOperators.B2F, FLOATS, 0);
+      sum = FloatVector.fromArray(FLOATS, a, i).fma(y, sum);
+    }
+    double dot = sum.reduceLanes(VectorOperators.ADD);
+    for (; i < a.length; i++) {
+      dot += a[i] * b[i];
+    }
+    return dot;
+  }
+}